@@ -0,0 +1,141 @@
+package correio.bench;
+
+import correio.server.ExecutorMode;
+import correio.server.SequenceIdAllocator;
+import correio.server.ServerContext;
+import correio.server.ServerEngine;
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentJournal;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compara os modos de executor (threads de plataforma x virtuais) do motor bloqueante:
+ * quantas sessoes de controle simultaneas o servidor sustenta, quanto isso custa em
+ * threads/heap e qual a latencia p50/p99 de comandos com todas as sessoes abertas.
+ */
+public class ExecutorModeBenchmark {
+    private static final int BASE_PORT = 21210;
+    private static final int CLIENT_THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        // O servidor rastreia cada comando em DEBUG; mantem so avisos durante a medicao.
+        ServerLog.setLevel(LogLevel.WARN);
+
+        System.out.printf("%-10s %10s %10s %12s %10s %10s%n", "modo", "sessoes", "threads", "heap(MB)", "p50(us)", "p99(us)");
+        for (ExecutorMode mode : ExecutorMode.values()) {
+            Result r = run(mode, BASE_PORT + mode.ordinal(), sessions, commands);
+            System.out.printf("%-10s %10d %10d %12.1f %10.1f %10.1f%n",
+                    mode.name().toLowerCase(), r.sessions, r.threads, r.heapMb, r.p50Micros, r.p99Micros);
+        }
+    }
+
+    private record Result(int sessions, int threads, double heapMb, double p50Micros, double p99Micros) {}
+
+    private static final class Session {
+        final Socket socket;
+        final BufferedReader in;
+        final OutputStream out;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = socket.getOutputStream();
+        }
+
+        synchronized long roundTrip(byte[] command) throws IOException {
+            long start = System.nanoTime();
+            out.write(command);
+            out.flush();
+            if (in.readLine() == null) throw new IOException("Servidor fechou a sessao");
+            return System.nanoTime() - start;
+        }
+    }
+
+    private static Result run(ExecutorMode mode, int port, int sessionCount, int commandCount) throws Exception {
+        Path uploadsDir = Files.createTempDirectory("executor-bench");
+        ConcurrentMap<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = new ShipmentJournal(uploadsDir, 10_000, false);
+        journal.open(tracking);
+        ServerEngine engine = ServerEngine.create("blocking", port, new ServerContext(uploadsDir, tracking, journal, new SequenceIdAllocator(1), null), mode, 1);
+        engine.start();
+
+        List<Session> sessions = new ArrayList<>(sessionCount);
+        try {
+            for (int i = 0; i < sessionCount; i++) {
+                try {
+                    Socket socket = new Socket("localhost", port);
+                    socket.setSoTimeout(5000);
+                    Session s = new Session(socket);
+                    if (s.in.readLine() == null) break; // 220
+                    sessions.add(s);
+                } catch (IOException e) {
+                    break; // limite de capacidade atingido
+                }
+            }
+
+            System.gc();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            Runtime rt = Runtime.getRuntime();
+            double heapMb = (rt.totalMemory() - rt.freeMemory()) / (1024.0 * 1024.0);
+
+            long[] latencies = new long[commandCount];
+            AtomicInteger next = new AtomicInteger();
+            byte[] stat = "STAT 0000\r\n".getBytes(StandardCharsets.US_ASCII);
+            CountDownLatch done = new CountDownLatch(CLIENT_THREADS);
+            for (int t = 0; t < CLIENT_THREADS; t++) {
+                Thread.ofPlatform().start(() -> {
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement()) < commandCount) {
+                            latencies[i] = sessions.get(i % sessions.size()).roundTrip(stat);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+
+            Arrays.sort(latencies);
+            return new Result(sessions.size(), threads, heapMb,
+                    percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0);
+        } finally {
+            for (Session s : sessions) {
+                try {
+                    s.socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            engine.stop();
+            journal.close();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+}
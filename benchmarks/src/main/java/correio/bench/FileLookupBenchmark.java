@@ -0,0 +1,74 @@
+package correio.bench;
+
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Compara a busca do arquivo fisico de uma encomenda no RETR: a varredura original
+ * do diretorio ({@code Files.list} + filtro por prefixo) contra o indice em memoria
+ * ({@link ShipmentInfo#getFile()} via mapa de rastreio), com N arquivos em uploads/.
+ */
+public class FileLookupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int scanLookups = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int indexLookups = 1_000_000;
+
+        Path dir = Files.createTempDirectory("lookup-bench");
+        try {
+            Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+            for (int i = 0; i < files; i++) {
+                String id = String.format("%06d", i);
+                Path file = Files.createFile(dir.resolve(id + "_parcel_ENVIADA.txt"));
+                tracking.put(id, new ShipmentInfo(id, "parcel.txt", LocalDateTime.now(), ShipmentStatus.ENVIADA, file));
+            }
+            System.out.printf("%d arquivos no diretorio%n", files);
+
+            Random random = new Random(42);
+            long start = System.nanoTime();
+            for (int i = 0; i < scanLookups; i++) {
+                if (findFileById(dir, String.format("%06d", random.nextInt(files))) == null) throw new AssertionError();
+            }
+            double scanMicros = (System.nanoTime() - start) / 1e3 / scanLookups;
+
+            String[] ids = new String[4096];
+            for (int i = 0; i < ids.length; i++) ids[i] = String.format("%06d", random.nextInt(files));
+            long found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < indexLookups; i++) {
+                ShipmentInfo info = tracking.get(ids[i & (ids.length - 1)]);
+                if (info.getFile() != null) found++;
+            }
+            double indexMicros = (System.nanoTime() - start) / 1e3 / indexLookups;
+            if (found != indexLookups) throw new AssertionError();
+
+            System.out.printf("%-28s %14.2f us/busca%n", "Files.list + filtro (original)", scanMicros);
+            System.out.printf("%-28s %14.4f us/busca%n", "indice em memoria", indexMicros);
+        } finally {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Copia do ClientHandler.findFileById original, mantida aqui apenas como referencia. */
+    private static Path findFileById(Path uploadsDir, String shipmentId) throws IOException {
+        try (Stream<Path> stream = Files.list(uploadsDir)) {
+            return stream
+                    .filter(p -> p.getFileName().toString().startsWith(shipmentId + "_"))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+}
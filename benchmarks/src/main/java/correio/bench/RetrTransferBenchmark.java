@@ -0,0 +1,120 @@
+package correio.bench;
+
+import correio.server.DataTransfers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compara o envio de arquivo do RETR por loopback: o caminho original
+ * ({@code Files.copy} em um socket comum) contra {@link DataTransfers#sendFile}
+ * (transferTo/sendfile). Reporta vazao e CPU gasta por GB no remetente e no processo.
+ */
+public class RetrTransferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path file = Files.createTempFile("retr-bench", ".bin");
+        try {
+            writeFile(file, sizeMb);
+            System.out.printf("Arquivo de %d MB, %d rodadas%n", sizeMb, rounds);
+            System.out.printf("%-22s %12s %18s %18s%n", "caminho", "MB/s", "CPU envio ms/GB", "CPU total ms/GB");
+            for (int r = 0; r < rounds; r++) {
+                report("Files.copy (original)", file, RetrTransferBenchmark::sendWithFilesCopy);
+                report("transferTo (zero-copy)", file, RetrTransferBenchmark::sendWithDataTransfers);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Envia o arquivo para um receptor local e retorna o tempo de CPU da thread remetente (ns). */
+    private interface Sender {
+        long send(Path file) throws Exception;
+    }
+
+    private static void writeFile(Path file, int sizeMb) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(1024 * 1024);
+        for (int i = 0; i < chunk.capacity(); i++) chunk.put((byte) (i * 31));
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < sizeMb; i++) {
+                chunk.flip();
+                while (chunk.hasRemaining()) fc.write(chunk);
+            }
+        }
+    }
+
+    private static void report(String label, Path file, Sender sender) throws Exception {
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long bytes = Files.size(file);
+        long cpuBefore = os.getProcessCpuTime();
+        long start = System.nanoTime();
+
+        long senderCpu = sender.send(file);
+
+        long elapsed = System.nanoTime() - start;
+        long cpu = os.getProcessCpuTime() - cpuBefore;
+        double gb = bytes / (1024.0 * 1024 * 1024);
+        System.out.printf("%-22s %12.1f %18.1f %18.1f%n", label,
+                (bytes / (1024.0 * 1024)) / (elapsed / 1e9), senderCpu / 1e6 / gb, cpu / 1e6 / gb);
+    }
+
+    /** Caminho original do handleRetr: ServerSocket comum + Files.copy para o OutputStream. */
+    private static long sendWithFilesCopy(Path file) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread receiver = startReceiver(listener.getLocalPort());
+            long cpu;
+            try (Socket data = listener.accept(); OutputStream out = data.getOutputStream()) {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                long before = threads.getCurrentThreadCpuTime();
+                Files.copy(file, out);
+                out.flush();
+                cpu = threads.getCurrentThreadCpuTime() - before;
+            }
+            receiver.join();
+            return cpu;
+        }
+    }
+
+    /** Caminho novo: ServerSocketChannel (como no PASV) + DataTransfers.sendFile. */
+    private static long sendWithDataTransfers(Path file) throws Exception {
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress(0))) {
+            Thread receiver = startReceiver(listener.socket().getLocalPort());
+            long cpu;
+            try (Socket data = listener.socket().accept()) {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                long before = threads.getCurrentThreadCpuTime();
+                DataTransfers.sendFile(file, data);
+                cpu = threads.getCurrentThreadCpuTime() - before;
+            }
+            receiver.join();
+            return cpu;
+        }
+    }
+
+    private static Thread startReceiver(int port) {
+        return Thread.ofPlatform().start(() -> {
+            ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+            try (SocketChannel ch = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+                while (ch.read(sink) >= 0) sink.clear();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
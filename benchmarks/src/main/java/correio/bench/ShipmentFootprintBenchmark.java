@@ -0,0 +1,131 @@
+package correio.bench;
+
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Compara o {@link ShipmentInfo} atual (status enum com CAS, horario em um long) com a
+ * representacao original (status String e getters synchronized, {@link LocalDateTime}):
+ * heap por encomenda com N encomendas vivas e o tempo de montar as linhas do LIST.
+ * Os status sao Strings novas por encomenda, como saem do diario na recuperacao.
+ * Argumentos: {@code [encomendas] [rodadas do LIST]} (padrao {@code 1000000 5}).
+ * Rode com heap fixo e o mesmo GC nas comparacoes, ex.: {@code -Xmx2g -XX:+UseParallelGC}.
+ */
+public class ShipmentFootprintBenchmark {
+    private static final DateTimeFormatter LIST_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Path DIR = Paths.get("uploads");
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        long before = usedHeap();
+        LegacyShipmentInfo[] legacy = new LegacyShipmentInfo[entries];
+        for (int i = 0; i < entries; i++) {
+            String id = id(i);
+            legacy[i] = new LegacyShipmentInfo(id, filename(i), BASE.plusSeconds(i), new String(status(i).name()), DIR.resolve(id + "_" + filename(i)));
+        }
+        double legacyBytes = (usedHeap() - before) / (double) entries;
+        double legacyMillis = listMillis(legacy, rounds);
+        legacy = null;
+
+        before = usedHeap();
+        ShipmentInfo[] current = new ShipmentInfo[entries];
+        for (int i = 0; i < entries; i++) {
+            String id = id(i);
+            current[i] = new ShipmentInfo(id, filename(i), BASE.plusSeconds(i), ShipmentStatus.find(new String(status(i).name())), DIR.resolve(id + "_" + filename(i)));
+        }
+        double currentBytes = (usedHeap() - before) / (double) entries;
+        double currentMillis = listMillis(current, rounds);
+
+        System.out.printf("%d encomendas (id, nome e Path incluidos)%n", entries);
+        System.out.printf("%-34s %8.1f bytes/encomenda %10.1f ms/LIST%n", "String + LocalDateTime (original)", legacyBytes, legacyMillis);
+        System.out.printf("%-34s %8.1f bytes/encomenda %10.1f ms/LIST%n", "enum + long", currentBytes, currentMillis);
+    }
+
+    private static String id(int i) {
+        return String.format("%07d", i);
+    }
+
+    private static String filename(int i) {
+        return "encomenda-" + i + ".pdf";
+    }
+
+    private static ShipmentStatus status(int i) {
+        return (i & 3) == 0 ? ShipmentStatus.ENTREGUE : ShipmentStatus.ENVIADA;
+    }
+
+    // Mesmo layout do ClientHandler.formatListRow, com a formatacao original da data
+    private static double listMillis(LegacyShipmentInfo[] entries, int rounds) {
+        StringBuilder row = new StringBuilder(96);
+        long chars = 0;
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds + 2; r++) {
+            long start = System.nanoTime();
+            for (LegacyShipmentInfo info : entries) {
+                row.setLength(0);
+                row.append(info.getId()).append(" | ").append(info.getFilename()).append(" | ")
+                        .append(info.getStatus()).append(" | ");
+                LIST_TIME_FORMAT.formatTo(info.getTimestamp(), row);
+                chars += row.length();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (chars == 0) throw new AssertionError();
+        return best / 1e6;
+    }
+
+    private static double listMillis(ShipmentInfo[] entries, int rounds) {
+        StringBuilder row = new StringBuilder(96);
+        long chars = 0;
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds + 2; r++) {
+            long start = System.nanoTime();
+            for (ShipmentInfo info : entries) {
+                row.setLength(0);
+                row.append(info.getId()).append(" | ").append(info.getFilename()).append(" | ")
+                        .append(info.getStatus().name()).append(" | ");
+                info.appendTimestamp(row);
+                chars += row.length();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (chars == 0) throw new AssertionError();
+        return best / 1e6;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Copia do ShipmentInfo original, mantida aqui apenas como referencia. */
+    private static final class LegacyShipmentInfo {
+        private final String id;
+        private final String filename;
+        private final LocalDateTime timestamp;
+        private String status;
+        private Path file;
+
+        LegacyShipmentInfo(String id, String filename, LocalDateTime timestamp, String status, Path file) {
+            this.id = id;
+            this.filename = filename;
+            this.timestamp = timestamp;
+            this.status = status;
+            this.file = file;
+        }
+
+        String getId() { return id; }
+        String getFilename() { return filename; }
+        LocalDateTime getTimestamp() { return timestamp; }
+        synchronized String getStatus() { return status; }
+        synchronized Path getFile() { return file; }
+    }
+}
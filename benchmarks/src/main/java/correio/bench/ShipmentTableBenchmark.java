@@ -0,0 +1,151 @@
+package correio.bench;
+
+import correio.client.ShipmentRow;
+import correio.client.ShipmentTableModel;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carga de uma listagem de N encomendas na tabela do cliente grafico: {@code default}
+ * (como era: {@link ShipmentRow} para todas as linhas e um {@code addRow} por linha em um
+ * {@link DefaultTableModel} na EDT) ou {@code columnar} ({@link ShipmentTableModel}, linhas
+ * gravadas fora da EDT e publicadas em lotes). Mede o tempo ate todas as linhas estarem no
+ * modelo, a maior pausa da EDT (uma sonda agenda uma tarefa vazia a cada 1 ms), os eventos de
+ * mudanca disparados (com uma {@link JTable} ligada ao modelo) e o heap do modelo; no {@code columnar}, tambem ordenar e filtrar.
+ * As linhas sao montadas no formato do LIST do servidor e interpretadas com {@link ShipmentRow#parse}.
+ * Argumentos: {@code [default|columnar] [encomendas]} (padrao {@code columnar 100000}).
+ * Rode sem tela: {@code -Djava.awt.headless=true}.
+ */
+public class ShipmentTableBenchmark {
+    private static final int DISTINCT_NAMES = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        String model = args.length > 0 ? args[0] : "columnar";
+        int entries = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        String[] lines = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            lines[i] = String.format("%04d | %-30s | %-10s | 2024-01-%02d %02d:%02d:%02d", i + 1,
+                    "encomenda-" + (i % DISTINCT_NAMES) + ".pdf", (i & 3) == 0 ? "ENTREGUE" : "ENVIADA",
+                    i / 86_400 % 28 + 1, i / 3600 % 24, i / 60 % 60, i % 60);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long before = usedHeap();
+            AtomicLong events = new AtomicLong();
+            EdtProbe probe = new EdtProbe();
+            probe.start();
+            long start = System.nanoTime();
+            AbstractTableModel table = switch (model) {
+                case "default" -> loadDefault(lines, events);
+                case "columnar" -> loadColumnar(lines, events);
+                default -> throw new IllegalArgumentException("Use default ou columnar: " + model);
+            };
+            long loadMillis = (System.nanoTime() - start) / 1_000_000;
+            long maxPauseMillis = probe.finish() / 1_000_000;
+            long bytes = usedHeap() - before;
+            if (table.getRowCount() != entries) throw new AssertionError(table.getRowCount());
+
+            System.out.printf("%s: %d encomendas em %d ms, maior pausa da EDT %d ms, %d evento(s), %.1f bytes/encomenda%n",
+                    model, entries, loadMillis, maxPauseMillis, events.get(), bytes / (double) entries);
+            if (table instanceof ShipmentTableModel columnar) {
+                long[] millis = new long[3];
+                SwingUtilities.invokeAndWait(() -> {
+                    long t = System.nanoTime();
+                    columnar.sortBy(ShipmentTableModel.SENT_AT);
+                    millis[0] = System.nanoTime() - t;
+                    t = System.nanoTime();
+                    columnar.setFilter("entregue");
+                    millis[1] = System.nanoTime() - t;
+                    t = System.nanoTime();
+                    columnar.setFilter("");
+                    columnar.sortBy(ShipmentTableModel.FILENAME);
+                    millis[2] = System.nanoTime() - t;
+                });
+                System.out.printf("  ordenar por data %.1f ms, filtrar (status) %.1f ms, ordenar por nome %.1f ms%n",
+                        millis[0] / 1e6, millis[1] / 1e6, millis[2] / 1e6);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static DefaultTableModel loadDefault(String[] lines, AtomicLong events) throws Exception {
+        DefaultTableModel[] table = new DefaultTableModel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            table[0] = new DefaultTableModel(new String[] { "ID", "Nome do Arquivo", "Status", "Data de Envio" }, 0);
+            table[0].addTableModelListener(e -> events.incrementAndGet());
+            new JTable(table[0]); // a JTable tambem trata cada evento
+        });
+        List<ShipmentRow> rows = new ArrayList<>();
+        for (String line : lines) {
+            ShipmentRow row = ShipmentRow.parse(line);
+            if (row != null) rows.add(row);
+        }
+        SwingUtilities.invokeAndWait(() -> {
+            table[0].setRowCount(0);
+            for (ShipmentRow row : rows) {
+                table[0].addRow(new Object[] { row.id(), row.filename(), row.status(), row.sentAt() });
+            }
+        });
+        return table[0];
+    }
+
+    private static ShipmentTableModel loadColumnar(String[] lines, AtomicLong events) throws Exception {
+        ShipmentTableModel table = new ShipmentTableModel();
+        table.addTableModelListener(e -> events.incrementAndGet());
+        ShipmentTableModel.Loader[] loader = new ShipmentTableModel.Loader[1];
+        SwingUtilities.invokeAndWait(() -> {
+            new JTable(table);
+            loader[0] = table.load();
+        });
+        for (String line : lines) {
+            ShipmentRow row = ShipmentRow.parse(line);
+            if (row != null) loader[0].accept(row);
+        }
+        loader[0].finish();
+        SwingUtilities.invokeAndWait(() -> { }); // a ultima publicacao ja esta na fila
+        return table;
+    }
+
+    /** Mede o maior atraso entre agendar uma tarefa vazia na EDT e ela rodar. */
+    private static final class EdtProbe extends Thread {
+        private volatile boolean running = true;
+        private long maxDelay;
+
+        EdtProbe() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long scheduled = System.nanoTime();
+                try {
+                    SwingUtilities.invokeAndWait(() -> { });
+                    maxDelay = Math.max(maxDelay, System.nanoTime() - scheduled);
+                    Thread.sleep(1);
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            running = false;
+            join();
+            return maxDelay;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
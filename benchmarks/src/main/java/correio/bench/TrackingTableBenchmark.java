@@ -0,0 +1,103 @@
+package correio.bench;
+
+import correio.server.PackedShipmentTable;
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+import correio.server.ShipmentTimeline;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memoria e tempo de busca do mapa de rastreio com N encomendas: {@code map}
+ * ({@link ConcurrentHashMap} de {@link ShipmentInfo}, o padrao) ou {@code packed}
+ * ({@link PackedShipmentTable}). Mede o heap do mapa sozinho e junto com o indice do LIST,
+ * e o tempo medio de {@code get} (lendo o status, como o STAT) e de {@code containsKey}
+ * com IDs sorteados. Os nomes de arquivo vem de um conjunto de 10 mil nomes distintos.
+ * Argumentos: {@code [map|packed] [encomendas] [buscas]} (padrao {@code packed 10000000 5000000}).
+ * Rode cada tipo em uma JVM propria com o mesmo heap, ex.: {@code -Xmx4g -XX:+UseParallelGC}.
+ */
+public class TrackingTableBenchmark {
+    private static final Path DIR = Paths.get("uploads");
+    private static final long BASE_NANOS = 1_704_067_200L * 1_000_000_000L; // 2024-01-01T00:00
+    private static final int DISTINCT_NAMES = 10_000;
+
+    public static void main(String[] args) {
+        String store = args.length > 0 ? args[0] : "packed";
+        int entries = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000;
+
+        String[] names = new String[DISTINCT_NAMES];
+        for (int i = 0; i < names.length; i++) names[i] = "encomenda-" + i + ".pdf";
+        Random random = new Random(42);
+        String[] probes = new String[1 << 20];
+        for (int i = 0; i < probes.length; i++) {
+            // Metade existe, metade nao (IDs acima do ultimo alocado)
+            probes[i] = String.format("%04d", random.nextInt(entries * 2) + 1);
+        }
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        ConcurrentMap<String, ShipmentInfo> tracking = switch (store) {
+            case "map" -> new ConcurrentHashMap<>();
+            case "packed" -> new PackedShipmentTable(DIR);
+            default -> throw new IllegalArgumentException("Use map ou packed: " + store);
+        };
+        for (int i = 1; i <= entries; i++) {
+            String id = String.format("%04d", i);
+            String name = names[i % DISTINCT_NAMES];
+            ShipmentStatus status = (i & 3) == 0 ? ShipmentStatus.ENTREGUE : ShipmentStatus.ENVIADA;
+            tracking.put(id, new ShipmentInfo(id, name, BASE_NANOS + i * 1_000_000_000L, status, DIR.resolve(id + "_" + name)));
+        }
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+        long mapBytes = usedHeap() - before;
+
+        start = System.nanoTime();
+        ShipmentTimeline timeline = ShipmentTimeline.create(tracking);
+        long timelineMillis = (System.nanoTime() - start) / 1_000_000;
+        long totalBytes = usedHeap() - before;
+
+        long found = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                ShipmentInfo info = tracking.get(probes[i & (probes.length - 1)]);
+                if (info != null && info.getStatus() == ShipmentStatus.ENTREGUE) found++;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double getNanos = best / (double) lookups;
+
+        best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                if (tracking.containsKey(probes[i & (probes.length - 1)])) found++;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double containsNanos = best / (double) lookups;
+
+        int listed = 0;
+        for (Map.Entry<ShipmentTimeline.Key, ShipmentInfo> ignored : timeline.page(ShipmentStatus.ENVIADA, null, null)) {
+            if (++listed == 1000) break;
+        }
+
+        if (found == 0 || listed == 0) throw new AssertionError();
+        System.out.printf("%s: %d encomendas, carga %d ms, indice do LIST %d ms%n", store, entries, loadMillis, timelineMillis);
+        System.out.printf("  heap: %.1f bytes/encomenda (mapa), %.1f bytes/encomenda (mapa + indice do LIST)%n",
+                mapBytes / (double) entries, totalBytes / (double) entries);
+        System.out.printf("  get + status: %.1f ns, containsKey: %.1f ns%n", getNanos, containsNanos);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,109 @@
+package correio.bench.jmh;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Cliente minimo do protocolo, so com o necessario para os benchmarks de loopback. */
+final class ControlSession implements Closeable {
+    private static final Pattern PASV_REPLY = Pattern.compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+    private final byte[] buffer = new byte[256 * 1024];
+
+    ControlSession(int port) throws IOException {
+        socket = new Socket("localhost", port);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = socket.getOutputStream();
+        expect("220");
+    }
+
+    String command(String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null) throw new IOException("Servidor fechou a sessao");
+        return reply;
+    }
+
+    /**
+     * Envia varios comandos ja codificados em uma unica escrita (pipelining) e le
+     * {@code replyLines} linhas de resposta; retorna a ultima.
+     */
+    String pipeline(byte[] commands, int replyLines) throws IOException {
+        out.write(commands);
+        out.flush();
+        String reply = null;
+        for (int i = 0; i < replyLines; i++) {
+            reply = in.readLine();
+            if (reply == null) throw new IOException("Servidor fechou a sessao");
+        }
+        return reply;
+    }
+
+    private String expect(String code) throws IOException {
+        String reply = in.readLine();
+        if (reply == null || !reply.startsWith(code)) throw new IOException("Esperado " + code + ", recebido: " + reply);
+        return reply;
+    }
+
+    private Socket passive() throws IOException {
+        String reply = command("PASV");
+        Matcher m = PASV_REPLY.matcher(reply);
+        if (!m.find()) throw new IOException("Resposta PASV invalida: " + reply);
+        int port = Integer.parseInt(m.group(5)) * 256 + Integer.parseInt(m.group(6));
+        return new Socket("localhost", port);
+    }
+
+    /** Envia o conteudo e retorna o ID de rastreio. */
+    String store(String filename, byte[] payload) throws IOException {
+        try (Socket data = passive()) {
+            String reply = command("STOR " + filename);
+            if (!reply.startsWith("150")) throw new IOException(reply);
+            data.getOutputStream().write(payload);
+        }
+        String done = expect("226");
+        return done.substring(done.lastIndexOf(' ') + 1);
+    }
+
+    /** Baixa a encomenda e retorna quantos bytes chegaram. */
+    long retrieve(String id) throws IOException {
+        return transfer("RETR " + id);
+    }
+
+    /** Executa LIST e retorna o tamanho da listagem em bytes. */
+    long list(String args) throws IOException {
+        return transfer(args.isEmpty() ? "LIST" : "LIST " + args);
+    }
+
+    private long transfer(String commandLine) throws IOException {
+        long total = 0;
+        try (Socket data = passive()) {
+            String reply = command(commandLine);
+            if (!reply.startsWith("150")) throw new IOException(reply);
+            InputStream input = data.getInputStream();
+            int n;
+            while ((n = input.read(buffer)) > 0) total += n;
+        }
+        expect("226");
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            command("QUIT");
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package correio.bench.jmh;
+
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comandos de controle por segundo por uma sessao real em loopback: {@code pipeline} STATs
+ * (resposta de 3 linhas) enviados em uma unica escrita, esperando todas as respostas.
+ * Cada operacao sao {@code pipeline} comandos; com 1 CPU cliente e servidor dividem o nucleo.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcorreio.log.console=false")
+@State(Scope.Benchmark)
+public class ControlThroughputBenchmark {
+
+    @Param({"blocking", "nio"})
+    public String engine;
+
+    @Param({"1", "16"})
+    public int pipeline;
+
+    private LocalServer server;
+    private ControlSession session;
+    private byte[] commands;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dir = Files.createTempDirectory("control-bench");
+        ConcurrentMap<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = String.format("%04d", i);
+            tracking.put(id, new ShipmentInfo(id, "parcel.txt", LocalDateTime.now(), ShipmentStatus.ENVIADA, dir.resolve(id)));
+        }
+        server = LocalServer.start(dir, tracking, engine);
+        session = new ControlSession(server.port());
+        commands = "STAT 0420\r\n".repeat(pipeline).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        session.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String stat() throws IOException {
+        return session.pipeline(commands, pipeline * 3);
+    }
+}
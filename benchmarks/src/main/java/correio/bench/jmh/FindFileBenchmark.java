@@ -0,0 +1,88 @@
+package correio.bench.jmh;
+
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Busca do arquivo de uma encomenda com N arquivos no diretorio: a varredura original
+ * ({@code findFileById}: {@code Files.list} + prefixo) contra o indice em memoria usado pelo RETR.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindFileBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private Path dir;
+    private final Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("find-bench");
+        ids = new String[files];
+        for (int i = 0; i < files; i++) {
+            String id = String.format("%06d", i);
+            Path file = Files.createFile(dir.resolve(id + "_parcel_ENVIADA.txt"));
+            tracking.put(id, new ShipmentInfo(id, "parcel.txt", LocalDateTime.now(), ShipmentStatus.ENVIADA, file));
+            ids[i] = id;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LocalServer.deleteRecursively(dir);
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public Path directoryScan() throws IOException {
+        return findFileById(dir, randomId());
+    }
+
+    @Benchmark
+    public Path memoryIndex() {
+        return tracking.get(randomId()).getFile();
+    }
+
+    /** Copia do ClientHandler.findFileById original. */
+    private static Path findFileById(Path uploadsDir, String shipmentId) throws IOException {
+        try (Stream<Path> stream = Files.list(uploadsDir)) {
+            return stream
+                    .filter(p -> p.getFileName().toString().startsWith(shipmentId + "_"))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+}
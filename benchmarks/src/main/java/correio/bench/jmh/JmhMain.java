@@ -0,0 +1,32 @@
+package correio.bench.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ponto de entrada do {@code benchmarks.jar}. Repassa os argumentos ao JMH e, se nenhum
+ * formato de resultado foi pedido ({@code -rf}), grava o resultado em JSON em
+ * {@code jmh-results/AAAAMMDD-HHMMSS.json} para comparar execucoes ao longo do tempo.
+ */
+public final class JmhMain {
+
+    private JmhMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf") && !jmhArgs.contains("-l") && !jmhArgs.contains("-h")) {
+            Path dir = Paths.get("jmh-results");
+            Files.createDirectories(dir);
+            String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json";
+            jmhArgs.addAll(List.of("-rf", "json", "-rff", dir.resolve(name).toString()));
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,74 @@
+package correio.bench.jmh;
+
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LIST completo pelo protocolo (PASV + LIST + leitura da conexao de dados) com 1k/100k/1M
+ * encomendas no mapa de rastreio. {@code limit=0} lista tudo; os demais valores medem uma pagina.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ListBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"100", "0"})
+    public int limit;
+
+    private LocalServer server;
+    private ControlSession session;
+    private String args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dir = Files.createTempDirectory("list-bench");
+        ConcurrentMap<String, ShipmentInfo> tracking = new ConcurrentHashMap<>(entries * 2);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < entries; i++) {
+            String id = String.format("%07d", i);
+            ShipmentStatus status = (i & 3) == 0 ? ShipmentStatus.ENTREGUE : ShipmentStatus.ENVIADA;
+            tracking.put(id, new ShipmentInfo(id, "encomenda-" + i + ".pdf", base.plusSeconds(i), status, dir.resolve(id)));
+        }
+        server = LocalServer.start(dir, tracking);
+        session = new ControlSession(server.port());
+        args = limit > 0 ? "limit=" + limit : "";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        session.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long list() throws IOException {
+        return session.list(args);
+    }
+}
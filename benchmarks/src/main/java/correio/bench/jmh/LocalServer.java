@@ -0,0 +1,69 @@
+package correio.bench.jmh;
+
+import correio.server.ExecutorMode;
+import correio.server.SequenceIdAllocator;
+import correio.server.ServerContext;
+import correio.server.ServerEngine;
+import correio.server.ShipmentInfo;
+import correio.server.ShipmentJournal;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Servidor completo no proprio processo, em porta livre e diretorio temporario, com o mapa
+ * de rastreio ja populado pelo benchmark. O log fica em WARN para nao medir o rastreio por comando.
+ */
+final class LocalServer implements Closeable {
+    private final Path dir;
+    private final ShipmentJournal journal;
+    private final ServerContext context;
+    private final ServerEngine engine;
+
+    private LocalServer(Path dir, ShipmentJournal journal, ServerContext context, ServerEngine engine) {
+        this.dir = dir;
+        this.journal = journal;
+        this.context = context;
+        this.engine = engine;
+    }
+
+    static LocalServer start(Path dir, ConcurrentMap<String, ShipmentInfo> tracking) throws IOException {
+        return start(dir, tracking, "blocking");
+    }
+
+    static LocalServer start(Path dir, ConcurrentMap<String, ShipmentInfo> tracking, String engineType) throws IOException {
+        ServerLog.setLevel(LogLevel.WARN);
+        // Snapshot so no encerramento: o benchmark nao mede a compactacao do diario
+        ShipmentJournal journal = new ShipmentJournal(dir, Integer.MAX_VALUE, false);
+        journal.open(tracking);
+        ServerContext context = new ServerContext(dir, tracking, journal, SequenceIdAllocator.seededFrom(tracking.keySet()), null);
+        ServerEngine engine = ServerEngine.create(engineType, 0, context, ExecutorMode.PLATFORM, 1);
+        engine.start();
+        return new LocalServer(dir, journal, context, engine);
+    }
+
+    int port() { return engine.port(); }
+    ServerContext context() { return context; }
+    Path dir() { return dir; }
+
+    @Override
+    public void close() throws IOException {
+        engine.stop();
+        journal.close();
+        deleteRecursively(dir);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
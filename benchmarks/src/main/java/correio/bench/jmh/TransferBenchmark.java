@@ -0,0 +1,80 @@
+package correio.bench.jmh;
+
+import correio.server.ShipmentInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOR e RETR completos por loopback (PASV, comando, conexao de dados e resposta 226)
+ * com arquivos de 4 KB, 1 MB e 16 MB. As encomendas criadas pelo STOR sao apagadas ao fim
+ * de cada iteracao para o diretorio temporario nao crescer sem limite.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    public int size;
+
+    private LocalServer server;
+    private ControlSession session;
+    private byte[] payload;
+    private String retrId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dir = Files.createTempDirectory("transfer-bench");
+        server = LocalServer.start(dir, new ConcurrentHashMap<>());
+        session = new ControlSession(server.port());
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        retrId = session.store("fixture.bin", payload);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeStored() throws IOException {
+        for (ShipmentInfo info : server.context().getTracking().values()) {
+            if (info.getId().equals(retrId)) continue;
+            server.context().getTracking().remove(info.getId());
+            if (info.getFile() != null) Files.deleteIfExists(info.getFile());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        session.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String stor() throws IOException {
+        return session.store("upload.bin", payload);
+    }
+
+    @Benchmark
+    public long retr() throws IOException {
+        return session.retrieve(retrId);
+    }
+}
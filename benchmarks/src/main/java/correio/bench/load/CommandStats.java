@@ -0,0 +1,64 @@
+package correio.bench.load;
+
+import correio.client.TransferResult;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estatisticas de um tipo de comando: histogramas HDR (em microssegundos) do tempo ate o 150,
+ * do tempo ate a resposta final (226/211) e contadores de bytes e erros.
+ */
+final class CommandStats {
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    final String name;
+    final Histogram toPreliminary = new ConcurrentHistogram(MAX_MICROS, 3);
+    final Histogram toCompletion = new ConcurrentHistogram(MAX_MICROS, 3);
+    final LongAdder bytes = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    CommandStats(String name) {
+        this.name = name;
+    }
+
+    /** Registra uma operacao bem-sucedida; {@code preliminaryNanos} e 0 quando nao ha 150. */
+    void record(TransferResult result) {
+        if (result.preliminaryNanos() != 0) {
+            toPreliminary.recordValue(micros(result.timeToPreliminaryNanos()));
+        }
+        toCompletion.recordValue(micros(result.timeToCompletionNanos()));
+        bytes.add(result.bytes());
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(MAX_MICROS, Math.max(1, nanos / 1000));
+    }
+
+    static void printHeader(PrintStream out) {
+        out.printf("%-6s %-5s %9s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "cmd", "ate", "ops", "ops/s", "erros", "MB/s", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+    }
+
+    void print(PrintStream out, double seconds) {
+        long ok = toCompletion.getTotalCount();
+        if (ok == 0 && errors.sum() == 0) return;
+        printRow(out, "226", toCompletion, ok, errors.sum(), bytes.sum() / (1024.0 * 1024) / seconds, seconds);
+        if (toPreliminary.getTotalCount() > 0) {
+            printRow(out, "150", toPreliminary, toPreliminary.getTotalCount(), -1, -1, seconds);
+        }
+    }
+
+    private void printRow(PrintStream out, String until, Histogram h, long count, long errorCount, double mbPerSecond, double seconds) {
+        out.printf("%-6s %-5s %9d %9.1f %7s %9s %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, until, count, count / seconds,
+                errorCount < 0 ? "" : String.valueOf(errorCount),
+                mbPerSecond < 0 ? "" : String.format("%.1f", mbPerSecond),
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,366 @@
+package correio.bench.load;
+
+import correio.client.CorreioClient;
+import correio.client.FtpReplyException;
+import correio.client.ProtocolListener;
+import correio.client.TransferResult;
+import correio.server.CorreioServer;
+import correio.server.ServerConfig;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Gerador de carga de linha de comando: N sessoes simultaneas (uma thread virtual cada)
+ * compartilham um {@link CorreioClient} com N conexoes de controle e executam uma mistura configuravel de STOR/RETR/LIST/STAT com tamanhos de
+ * arquivo sorteados de uma distribuicao e pausas entre operacoes. Ao final mostra vazao e
+ * percentis HDR por comando, tanto ate o 150 (inicio da transferencia) quanto ate o 226.
+ *
+ * Exemplo: {@code --local --sessions 200 --duration 30 --mix stor=20,retr=40,list=10,stat=30 --sizes 4k=70,1m=25,16m=5}
+ */
+public final class LoadGenerator {
+    private static final String[] COMMANDS = {"STOR", "RETR", "LIST", "STAT"};
+    private static final int STOR = 0, RETR = 1, LIST = 2, STAT = 3;
+    /** IDs guardados para RETR/STAT; os mais antigos sao sobrescritos. */
+    private static final int ID_POOL = 1 << 16;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Uso: LoadGenerator [opcoes]",
+            "  --host H             servidor (padrao localhost)",
+            "  --port N             porta de controle (padrao 2121)",
+            "  --local [motor]      sobe um servidor no proprio processo (blocking ou nio)",
+            "  --sessions N         sessoes de controle simultaneas (padrao 50)",
+            "  --duration S         segundos de medicao (padrao 30)",
+            "  --warmup S           segundos de aquecimento descartados (padrao 5)",
+            "  --mix C=P,...        pesos de stor/retr/list/stat (padrao stor=20,retr=40,list=10,stat=30)",
+            "  --sizes T=P,...      tamanhos do STOR com pesos, ex.: 4k=70,1m=25,16m=5 (padrao 64k)",
+            "  --think A[-B]        pausa em ms entre operacoes, fixa ou uniforme (padrao 0)",
+            "  --list-args ARGS     argumentos do LIST (padrao limit=100)",
+            "  --timeout MS         timeout de socket (padrao 30000)",
+            "  --hgrm DIR           grava a distribuicao completa de cada histograma em DIR");
+
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final Weighted<Integer> mix;
+    private final Weighted<Integer> sizes;
+    private final int thinkMin;
+    private final int thinkMax;
+    private final String listArgs;
+    private final int timeoutMillis;
+
+    private final CommandStats[] stats = new CommandStats[COMMANDS.length];
+    private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(ID_POOL);
+    private final AtomicLong idCount = new AtomicLong();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder connectionFailures = new LongAdder();
+    private final byte[] payload = new byte[1024 * 1024];
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    private LoadGenerator(Map<String, String> options, int port) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = port;
+        this.sessions = Integer.parseInt(options.getOrDefault("sessions", "50"));
+        this.durationNanos = (long) (Double.parseDouble(options.getOrDefault("duration", "30")) * 1e9);
+        this.warmupNanos = (long) (Double.parseDouble(options.getOrDefault("warmup", "5")) * 1e9);
+        this.mix = Weighted.parse(options.getOrDefault("mix", "stor=20,retr=40,list=10,stat=30"), LoadGenerator::commandIndex);
+        this.sizes = Weighted.parse(options.getOrDefault("sizes", "64k"), LoadGenerator::parseSize);
+        String[] think = options.getOrDefault("think", "0").split("-");
+        this.thinkMin = Integer.parseInt(think[0].trim());
+        this.thinkMax = think.length > 1 ? Integer.parseInt(think[1].trim()) : thinkMin;
+        this.listArgs = options.getOrDefault("list-args", "limit=100");
+        this.timeoutMillis = Integer.parseInt(options.getOrDefault("timeout", "30000"));
+        for (int i = 0; i < COMMANDS.length; i++) stats[i] = new CommandStats(COMMANDS[i]);
+        new Random(42).nextBytes(payload);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options;
+        try {
+            options = parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.containsKey("help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        CorreioServer server = null;
+        Path localDir = null;
+        int port = Integer.parseInt(options.getOrDefault("port", "2121"));
+        if (options.containsKey("local")) {
+            ServerLog.setLevel(LogLevel.WARN);
+            localDir = Files.createTempDirectory("carga");
+            String engine = options.get("local").isEmpty() ? "blocking" : options.get("local");
+            server = new CorreioServer(ServerConfig.defaults()
+                    .with(ServerConfig.PORT, "0")
+                    .with(ServerConfig.DIR, localDir.toString())
+                    .with(ServerConfig.ENGINE, engine));
+            server.start();
+            port = server.port();
+        }
+
+        try {
+            LoadGenerator generator = new LoadGenerator(options, port);
+            generator.run(System.out);
+            String hgrm = options.get("hgrm");
+            if (hgrm != null) generator.writeHistograms(Paths.get(hgrm));
+        } finally {
+            if (server != null) {
+                server.stop();
+                try (Stream<Path> walk = Files.walk(localDir)) {
+                    walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private void run(PrintStream report) throws InterruptedException {
+        report.printf("%d sessoes contra %s:%d, aquecimento %.0f s, medicao %.0f s%n",
+                sessions, host, port, warmupNanos / 1e9, durationNanos / 1e9);
+
+        long start = System.nanoTime();
+        measureStart = start + warmupNanos;
+        measureEnd = measureStart + durationNanos;
+
+        CountDownLatch done = new CountDownLatch(sessions);
+        try (CorreioClient client = new CorreioClient(host, port, sessions, timeoutMillis, ProtocolListener.NONE)) {
+            for (int i = 0; i < sessions; i++) {
+                long seed = i;
+                Thread.ofVirtual().name("carga-", i).start(() -> {
+                    try {
+                        sessionLoop(client, new SplittableRandom(seed));
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            long lastOps = 0;
+            while (!done.await(5, TimeUnit.SECONDS)) {
+                long ops = operations.sum();
+                report.printf("  %5.0f s: %.0f ops/s%n", (System.nanoTime() - start) / 1e9, (ops - lastOps) / 5.0);
+                lastOps = ops;
+            }
+        }
+
+        double seconds = durationNanos / 1e9;
+        report.println();
+        CommandStats.printHeader(report);
+        for (CommandStats s : stats) s.print(report, seconds);
+        long total = 0;
+        for (CommandStats s : stats) total += s.toCompletion.getTotalCount();
+        report.printf("%nTotal: %d operacoes, %.1f ops/s, %d falha(s) de conexao%n", total, total / seconds, connectionFailures.sum());
+    }
+
+    private void sessionLoop(CorreioClient client, SplittableRandom random) {
+        while (System.nanoTime() < measureEnd) {
+            int command = mix.pick(random);
+            String id = randomId(random);
+            if (id == null && (command == RETR || command == STAT)) command = STOR; // ainda nao ha encomendas
+            execute(client, command, id, random);
+            operations.increment();
+            pause(random);
+        }
+    }
+
+    private void execute(CorreioClient client, int command, String id, SplittableRandom random) {
+        long begin = System.nanoTime();
+        TransferResult result;
+        try {
+            switch (command) {
+                case STOR -> {
+                    int length = sizes.pick(random);
+                    result = client.upload("carga.bin", length, () -> new RepeatingInputStream(payload, length)).join();
+                    rememberId(result.trackingId());
+                }
+                case RETR -> result = client.download(id, OutputStream.nullOutputStream()).join();
+                case LIST -> result = client.list(listArgs).join().transfer();
+                default -> {
+                    // STAT nao tem 150: mede so o tempo ate a resposta 211 final
+                    String info = client.status(id).join();
+                    result = new TransferResult(info, 0, begin, 0, System.nanoTime());
+                }
+            }
+        } catch (CompletionException e) {
+            // Respostas 4xx/5xx contam como erro do comando; o resto e falha da conexao
+            if (!(e.getCause() instanceof FtpReplyException)) connectionFailures.increment();
+            if (inWindow(begin)) stats[command].errors.increment();
+            return;
+        }
+        if (inWindow(begin)) stats[command].record(result);
+    }
+
+    private boolean inWindow(long nanos) {
+        return nanos >= measureStart && nanos < measureEnd;
+    }
+
+    private void rememberId(String id) {
+        ids.set((int) (idCount.getAndIncrement() & (ID_POOL - 1)), id);
+    }
+
+    private String randomId(SplittableRandom random) {
+        long count = Math.min(idCount.get(), ID_POOL);
+        return count == 0 ? null : ids.get(random.nextInt((int) count));
+    }
+
+    private void pause(SplittableRandom random) {
+        int millis = thinkMax > thinkMin ? random.nextInt(thinkMin, thinkMax + 1) : thinkMin;
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeHistograms(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (CommandStats s : stats) {
+            write(dir.resolve(s.name.toLowerCase(Locale.ROOT) + "-226.hgrm"), s.toCompletion);
+            if (s.toPreliminary.getTotalCount() > 0) write(dir.resolve(s.name.toLowerCase(Locale.ROOT) + "-150.hgrm"), s.toPreliminary);
+        }
+    }
+
+    private static void write(Path file, Histogram histogram) throws IOException {
+        if (histogram.getTotalCount() == 0) return;
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            histogram.outputPercentileDistribution(out, 1000.0); // em milissegundos
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Opcao invalida: " + args[i]);
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            if (name.equals("help")) {
+                options.put(name, "");
+            } else if (name.equals("local")) {
+                options.put(name, hasValue ? args[++i] : "");
+            } else if (hasValue) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Opcao sem valor: " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    private static int commandIndex(String name) {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (COMMANDS[i].equalsIgnoreCase(name)) return i;
+        }
+        throw new IllegalArgumentException("Comando desconhecido no --mix: " + name);
+    }
+
+    /** Aceita bytes ou sufixos k/m/g (base 1024), ex.: 512, 4k, 16m. */
+    static int parseSize(String text) {
+        String t = text.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        char last = t.charAt(t.length() - 1);
+        if (last == 'k' || last == 'm' || last == 'g') {
+            unit = last == 'k' ? 1024 : last == 'm' ? 1024 * 1024 : 1024L * 1024 * 1024;
+            t = t.substring(0, t.length() - 1);
+        }
+        long size = Long.parseLong(t) * unit;
+        if (size < 0 || size > Integer.MAX_VALUE) throw new IllegalArgumentException("Tamanho invalido: " + text);
+        return (int) size;
+    }
+
+    /** Conteudo do STOR: {@code length} bytes repetindo o payload, sem copiar para um buffer novo. */
+    private static final class RepeatingInputStream extends InputStream {
+        private final byte[] payload;
+        private final long length;
+        private long position;
+
+        RepeatingInputStream(byte[] payload, long length) {
+            this.payload = payload;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) return -1;
+            return payload[(int) (position++ % payload.length)] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) return -1;
+            int offset = (int) (position % payload.length);
+            int n = (int) Math.min(Math.min(len, length - position), payload.length - offset);
+            System.arraycopy(payload, offset, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /** Escolha ponderada entre valores, configurada como {@code valor=peso,valor=peso} (peso padrao 1). */
+    private static final class Weighted<T> {
+        private final List<T> values;
+        private final int[] cumulative;
+
+        private Weighted(List<T> values, int[] cumulative) {
+            this.values = values;
+            this.cumulative = cumulative;
+        }
+
+        static <T> Weighted<T> parse(String spec, Function<String, T> parser) {
+            List<T> values = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            for (String item : spec.split(",")) {
+                String[] kv = item.split("=");
+                int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+                if (weight <= 0) continue;
+                values.add(parser.apply(kv[0].trim()));
+                weights.add(weight);
+            }
+            if (values.isEmpty()) throw new IllegalArgumentException("Distribuicao vazia: " + spec);
+            int[] cumulative = new int[weights.size()];
+            int sum = 0;
+            for (int i = 0; i < cumulative.length; i++) cumulative[i] = sum += weights.get(i);
+            return new Weighted<>(values, cumulative);
+        }
+
+        T pick(SplittableRandom random) {
+            int r = random.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (r < cumulative[i]) return values.get(i);
+            }
+            return values.get(values.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package correio.server;
+
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Leitura, interpretacao e despacho de comandos de controle ({@link ClientHandler#dispatch}),
+ * sem rede: cada linha passa pelo {@link CommandBuffer} e as respostas por um
+ * {@link ControlReplies} com um flush por comando, como na sessao real.
+ * Fica no pacote do servidor porque {@code dispatch} nao e publico.
+ * O nivel de log e um parametro para mostrar o custo do rastreio por comando.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcorreio.log.console=false")
+@State(Scope.Thread)
+public class CommandDispatchBenchmark {
+
+    @Param({"WARN", "DEBUG"})
+    public String logLevel;
+
+    private Path dir;
+    private ShipmentJournal journal;
+    private ClientHandler handler;
+    private CommandBuffer input;
+    private ControlReplies out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ServerLog.setLevel(LogLevel.parse(logLevel));
+        dir = Files.createTempDirectory("dispatch-bench");
+        ConcurrentMap<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = String.format("%04d", i);
+            tracking.put(id, new ShipmentInfo(id, "parcel.txt", LocalDateTime.now(), ShipmentStatus.ENVIADA, dir.resolve(id)));
+        }
+        journal = new ShipmentJournal(dir, Integer.MAX_VALUE, false);
+        journal.open(tracking);
+        ServerContext context = new ServerContext(dir, tracking, journal, SequenceIdAllocator.seededFrom(tracking.keySet()), null);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        handler = new ClientHandler(loopback, loopback, context);
+        input = new CommandBuffer();
+        out = new ControlReplies(OutputStream.nullOutputStream(), context.getMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lines {
+        final ByteArrayInputStream user = line("USER correio");
+        final ByteArrayInputStream type = line("TYPE I");
+        final ByteArrayInputStream stat = line("STAT 0420");
+        final ByteArrayInputStream unknown = line("NOOP");
+
+        private static ByteArrayInputStream line(String command) {
+            return new ByteArrayInputStream((command + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Benchmark
+    public boolean user(Lines lines) throws IOException {
+        return dispatch(lines.user);
+    }
+
+    @Benchmark
+    public boolean type(Lines lines) throws IOException {
+        return dispatch(lines.type);
+    }
+
+    @Benchmark
+    public boolean stat(Lines lines) throws IOException {
+        return dispatch(lines.stat);
+    }
+
+    @Benchmark
+    public boolean unknown(Lines lines) throws IOException {
+        return dispatch(lines.unknown);
+    }
+
+    private boolean dispatch(ByteArrayInputStream line) throws IOException {
+        line.reset();
+        input.read(line);
+        input.nextLine();
+        boolean keepOpen = handler.dispatch(input, out);
+        out.flush();
+        return keepOpen;
+    }
+}
@@ -0,0 +1,76 @@
+package correio.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool limitado de conexoes de controle autenticadas. Conexoes ociosas sao reaproveitadas
+ * (LIFO, a mais recente primeiro) e descartadas depois de {@code idleTimeoutNanos}, antes
+ * que o servidor ou um firewall as derrube. Quem pede uma conexao com o pool cheio espera.
+ */
+final class ConnectionPool implements Closeable {
+
+    interface Factory {
+        FtpConnection open() throws IOException;
+    }
+
+    private final Factory factory;
+    private final Semaphore permits;
+    private final long idleTimeoutNanos;
+    private final Deque<FtpConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    ConnectionPool(Factory factory, int maxConnections, long idleTimeoutNanos) {
+        if (maxConnections < 1) throw new IllegalArgumentException("maxConnections deve ser >= 1");
+        this.factory = factory;
+        this.permits = new Semaphore(maxConnections, true);
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    FtpConnection acquire() throws IOException, InterruptedException {
+        if (closed) throw new IOException("Cliente encerrado");
+        permits.acquire();
+        try {
+            long now = System.nanoTime();
+            FtpConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (connection.isOpen() && now - connection.lastUsedNanos < idleTimeoutNanos) return connection;
+                connection.close();
+            }
+            return factory.open();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Devolve a conexao; se {@code reusable} for falso (erro de I/O) ela e fechada. */
+    void release(FtpConnection connection, boolean reusable) {
+        if (reusable && !closed && connection.isOpen()) {
+            connection.lastUsedNanos = System.nanoTime();
+            idle.addFirst(connection);
+            if (closed) drain(); // close() concorrente
+        } else {
+            connection.abort();
+        }
+        permits.release();
+    }
+
+    int idleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    private void drain() {
+        FtpConnection connection;
+        while ((connection = idle.pollFirst()) != null) connection.close();
+    }
+}
@@ -0,0 +1,322 @@
+package correio.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Cliente do servidor de encomendas, sem interface grafica e thread-safe. Mantem um pool de
+ * conexoes de controle ja autenticadas, reaproveitadas entre operacoes (o handshake
+ * USER/PASS/TYPE acontece uma vez por conexao), e expoe operacoes assincronas que retornam
+ * {@link CompletableFuture}. Cada operacao roda em uma thread virtual; no maximo
+ * {@code maxConnections} operacoes acontecem ao mesmo tempo e as demais aguardam uma conexao.
+ *
+ * Erros do servidor (4xx/5xx) completam o future com {@link FtpReplyException}.
+ *
+ * Uploads e downloads para arquivo sao retomados automaticamente se a transferencia cair:
+ * o upload continua do byte informado pelo SIZE do ID reservado ({@code REST} + {@code STOR <id>})
+ * e o download continua do tamanho ja gravado em disco ({@code REST} + {@code RETR}).
+ *
+ * Downloads grandes para arquivo sao segmentados: varias conexoes baixam intervalos
+ * ({@code RANG} + {@code RETR}) em paralelo e gravam direto na posicao certa de um arquivo
+ * pre-alocado. O numero de conexoes (ate {@code maxConnections}) e o tamanho dos segmentos se
+ * ajustam a vazao medida, veja {@link SegmentedDownload}.
+ *
+ * Com {@link #setCompression(int)} as transferencias usam MODE Z (deflate no canal de dados),
+ * negociado por conexao; formatos ja comprimidos vao sem compressao e cada transferencia
+ * reporta taxa e custo de CPU em {@link ProtocolListener#transferCompressed}.
+ */
+public class CorreioClient implements Closeable {
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final int RESUME_ATTEMPTS = 5;
+    private static final long RESUME_BACKOFF_MILLIS = 500;
+
+    /** Conteudo de um upload; pode ser aberto de novo se a operacao precisar ser repetida. */
+    @FunctionalInterface
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run(FtpConnection connection) throws IOException;
+    }
+
+    private final String host;
+    private final int port;
+    private final ConnectionPool pool;
+    private final ExecutorService executor;
+    private final ProtocolListener listener;
+    private final int maxConnections;
+    private volatile int compression = -1;
+
+    public CorreioClient(String host, int port) {
+        this(host, port, 4, 30_000, ProtocolListener.NONE);
+    }
+
+    public CorreioClient(String host, int port, int maxConnections, int timeoutMillis, ProtocolListener listener) {
+        this.host = host;
+        this.port = port;
+        this.listener = listener;
+        this.maxConnections = maxConnections;
+        this.pool = new ConnectionPool(
+                () -> new FtpConnection(host, port, timeoutMillis, "anonymous", "guest@example.com", listener),
+                maxConnections, IDLE_TIMEOUT_NANOS);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("correio-client-", 0).factory());
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+
+    /**
+     * Liga o MODE Z nas proximas operacoes com o nivel do deflate (0-9; 1 e o mais rapido,
+     * 9 o que mais comprime) ou desliga com -1. Servidores sem MODE Z continuam sem compressao.
+     */
+    public void setCompression(int level) {
+        if (level < -1 || level > 9) throw new IllegalArgumentException("Nivel de compressao invalido: " + level);
+        this.compression = level;
+    }
+
+    public int getCompression() { return compression; }
+
+    /** Abre (ou valida) uma conexao do pool; falha se o servidor estiver inacessivel. */
+    public CompletableFuture<Void> connect() {
+        return submit(connection -> null);
+    }
+
+    /** Envia o arquivo com o proprio nome; o resultado traz o ID de rastreio. */
+    public CompletableFuture<TransferResult> upload(Path file) {
+        return supply(() -> storeResumable(file.getFileName().toString(), Files.size(file), () -> Files.newInputStream(file)));
+    }
+
+    /** @param length tamanho em bytes, ou -1 se desconhecido (sem ALLO, o servidor nao detecta envio truncado) */
+    public CompletableFuture<TransferResult> upload(String remoteName, long length, Content content) {
+        return supply(() -> storeResumable(remoteName, length, content));
+    }
+
+    /**
+     * Baixa a encomenda para {@code target}, segmentando arquivos grandes; um download que nao
+     * pode ser retomado e apagado.
+     */
+    public CompletableFuture<TransferResult> download(String id, Path target) {
+        return supply(() -> {
+            boolean done = false;
+            try {
+                long size = maxConnections > 1 ? execute(connection -> connection.size(id)) : 0;
+                TransferResult result = size >= SegmentedDownload.MIN_SIZE
+                        ? retrieveSegmented(id, target, size)
+                        : retrieveResumable(id, target);
+                done = true;
+                return result;
+            } finally {
+                if (!done) Files.deleteIfExists(target);
+            }
+        });
+    }
+
+    /** Baixa a encomenda para um stream, que nao e fechado (sem retomada automatica). */
+    public CompletableFuture<TransferResult> download(String id, OutputStream sink) {
+        return submit(connection -> connection.retrieve(id, sink, 0));
+    }
+
+    public CompletableFuture<ListPage> list() {
+        return list("");
+    }
+
+    /** @param args argumentos do LIST, ex.: {@code limit=100 status=ENVIADA cursor=...} */
+    public CompletableFuture<ListPage> list(String args) {
+        return submit(connection -> connection.list(args));
+    }
+
+    /**
+     * LIST entregando cada linha a {@code rows} enquanto a listagem chega, na thread do cliente
+     * (ex.: para preencher uma tabela sem guardar a lista inteira); a {@link ListPage} vem sem linhas.
+     */
+    public CompletableFuture<ListPage> list(String args, Consumer<ShipmentRow> rows) {
+        return submit(connection -> connection.list(args, rows));
+    }
+
+    /** Tamanho da encomenda, ou bytes ja recebidos de um upload interrompido com esse ID. */
+    public CompletableFuture<Long> size(String id) {
+        return submit(connection -> connection.size(id));
+    }
+
+    /** Linha de status da encomenda, ex.: {@code 0001: nota.pdf (ENVIADA)}. */
+    public CompletableFuture<String> status(String id) {
+        return submit(connection -> connection.status(id));
+    }
+
+    /**
+     * Status de varias encomendas por uma unica conexao, com os STATs enviados em pipeline
+     * (varios IDs por comando). O mapa segue a ordem de {@code ids}; IDs inexistentes ficam com null.
+     */
+    public CompletableFuture<Map<String, String>> status(Collection<String> ids) {
+        List<String> batch = List.copyOf(ids);
+        for (String id : batch) {
+            if (id.isBlank() || id.chars().anyMatch(Character::isWhitespace)) {
+                throw new IllegalArgumentException("ID de rastreio invalido: '" + id + "'");
+            }
+        }
+        if (batch.isEmpty()) return CompletableFuture.completedFuture(Map.of());
+        return submit(connection -> connection.status(batch));
+    }
+
+    private TransferResult storeResumable(String remoteName, long length, Content content) throws IOException, InterruptedException {
+        AtomicReference<String> reserved = new AtomicReference<>();
+        for (int attempt = 1; ; attempt++) {
+            String id = reserved.get();
+            try {
+                if (id == null) {
+                    return execute(connection -> {
+                        try (InputStream in = content.open()) {
+                            return connection.store(remoteName, remoteName, length, in, -1, reserved::set);
+                        }
+                    });
+                }
+                return execute(connection -> {
+                    long offset = connection.size(id);
+                    listener.transferResumed(id, offset);
+                    try (InputStream in = content.open()) {
+                        in.skipNBytes(offset);
+                        return withOffset(connection.store(id, remoteName, length, in, offset, null), offset);
+                    }
+                });
+            } catch (IOException e) {
+                // Sem ID reservado o servidor nao guardou nada: nao ha o que retomar
+                if (reserved.get() == null || !retryAfterBackoff(e, attempt)) throw e;
+            }
+        }
+    }
+
+    private TransferResult retrieveResumable(String id, Path target) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            long offset = attempt == 1 ? 0 : Files.size(target);
+            try {
+                return execute(connection -> {
+                    if (offset > 0) listener.transferResumed(id, offset);
+                    try (OutputStream out = offset == 0
+                            ? Files.newOutputStream(target)
+                            : Files.newOutputStream(target, StandardOpenOption.APPEND)) {
+                        return withOffset(connection.retrieve(id, out, offset), offset);
+                    }
+                });
+            } catch (IOException e) {
+                if (!retryAfterBackoff(e, attempt)) throw e;
+            }
+        }
+    }
+
+    private TransferResult retrieveSegmented(String id, Path target, long size) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        long firstPreliminary;
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.allocate(1), size - 1); // pre-aloca: os segmentos chegam fora de ordem
+            SegmentedDownload download = new SegmentedDownload(size, maxConnections,
+                    (start, end, progress) -> execute(connection -> connection.retrieveRange(id, start, end, file, progress)),
+                    this::retryAfterBackoff, offset -> listener.transferResumed(id, offset), executor);
+            try {
+                firstPreliminary = download.run();
+            } catch (FtpReplyException e) {
+                if (e.getCode() != 502) throw e;
+                firstPreliminary = -1; // servidor sem RANG
+            }
+        }
+        if (firstPreliminary < 0) return retrieveResumable(id, target);
+
+        // Os segmentos nao contam como entrega; um RETR vazio a partir do fim confirma o recebimento
+        TransferResult confirm = execute(connection -> connection.retrieve(id, OutputStream.nullOutputStream(), size));
+        return new TransferResult(confirm.reply(), size, started, firstPreliminary, confirm.completedNanos());
+    }
+
+    // Espera o backoff e retorna true se a falha for uma interrupcao que ainda pode ser retomada
+    private boolean retryAfterBackoff(IOException failure, int attempt) throws InterruptedException {
+        if (!isInterruption(failure) || attempt > RESUME_ATTEMPTS) return false;
+        Thread.sleep(RESUME_BACKOFF_MILLIS * attempt);
+        return true;
+    }
+
+    // Queda de conexao ou 425/426 (canal de dados falhou) podem ser retomados; as demais respostas nao
+    private static boolean isInterruption(IOException e) {
+        return !(e instanceof FtpReplyException reply) || reply.getCode() == 425 || reply.getCode() == 426;
+    }
+
+    // Uma transferencia retomada informa o tamanho total, nao so o trecho final
+    private static TransferResult withOffset(TransferResult result, long offset) {
+        if (offset <= 0) return result;
+        return new TransferResult(result.reply(), offset + result.bytes(), result.sentNanos(),
+                result.preliminaryNanos(), result.completedNanos());
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        return supply(() -> execute(operation));
+    }
+
+    @FunctionalInterface
+    private interface Task<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    private <T> CompletableFuture<T> supply(Task<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private <T> T execute(Operation<T> operation) throws IOException, InterruptedException {
+        FtpConnection connection = pool.acquire();
+        boolean reused = connection.operations > 0;
+        int repliesBefore = connection.replies;
+        try {
+            connection.compression(compression);
+            T result = operation.run(connection);
+            connection.operations++;
+            pool.release(connection, true);
+            return result;
+        } catch (FtpReplyException e) {
+            // O dialogo continua sincronizado: a conexao pode voltar ao pool
+            connection.operations++;
+            pool.release(connection, true);
+            throw e;
+        } catch (IOException e) {
+            pool.release(connection, false);
+            // Uma conexao ociosa pode ter sido derrubada pelo servidor antes de responder
+            // qualquer comando desta operacao: repete uma vez em uma conexao nova
+            if (reused && connection.replies == repliesBefore) return execute(operation);
+            throw e;
+        } catch (RuntimeException e) {
+            pool.release(connection, false);
+            throw e;
+        }
+    }
+
+    /** Encerra as conexoes ociosas (QUIT) e as threads do cliente. */
+    @Override
+    public void close() {
+        pool.close();
+        executor.shutdown();
+    }
+}
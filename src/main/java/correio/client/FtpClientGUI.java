@@ -1,19 +1,23 @@
 package correio.client;
 
+import correio.protocol.DeflateStreams;
+
 import javax.swing.*;
 import javax.swing.border.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.JTableHeader;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.*;
-import java.net.Socket;
-import java.nio.file.Files;
+import java.io.File;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 public class FtpClientGUI extends JFrame {
     // --- UI Constants (sem alterações) ---
@@ -34,20 +38,20 @@ public class FtpClientGUI extends JFrame {
     private enum LogLevel { INFO, SENT, RECV, SUCCESS, ERROR, WARN }
 
     // --- Components ---
-    private JTextField txtHost, txtPort, txtId;
+    private JTextField txtHost, txtPort, txtId, txtFilter;
     private JTextPane txtLog;
     private JTable shipmentTable;
-    private DefaultTableModel tableModel;
+    private ShipmentTableModel tableModel;
     private JButton btnConnect, btnUpload, btnDownload, btnList, btnStatus, btnDisconnect;
+    private JCheckBox chkCompression;
     private JLabel lblStatus;
     private JProgressBar progressBar;
 
     // --- Connection ---
-    private Socket controlSocket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int TIMEOUT_MILLIS = 30_000;
+    private CorreioClient client;
     private boolean isConnected = false;
-    private static final Pattern PASV_PATTERN = Pattern.compile(".*\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\).*");
 
 
     public FtpClientGUI() {
@@ -129,7 +133,14 @@ public class FtpClientGUI extends JFrame {
         txtPort = createStyledTextField("2121");
         setPlaceholder(txtPort, "ex: 2121");
         panel.add(txtPort, gbc);
-        gbc.gridy = 2; gbc.gridx = 0; gbc.gridwidth = 3;
+        gbc.gridx = 0; gbc.gridy = 2; gbc.gridwidth = 3;
+        chkCompression = new JCheckBox("Comprimir transferências (MODE Z)");
+        chkCompression.setOpaque(false);
+        chkCompression.addActionListener(e -> {
+            if (client != null) client.setCompression(compressionLevel());
+        });
+        panel.add(chkCompression, gbc);
+        gbc.gridy = 3; gbc.gridx = 0; gbc.gridwidth = 3;
         gbc.fill = GridBagConstraints.NONE;
         gbc.anchor = GridBagConstraints.CENTER;
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
@@ -190,17 +201,25 @@ public class FtpClientGUI extends JFrame {
         return mainSplit;
     }
 
-    private JScrollPane createShipmentTablePanel() {
-        String[] columnNames = {"ID", "Nome do Arquivo", "Status", "Data de Envio"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+    private JPanel createShipmentTablePanel() {
+        tableModel = new ShipmentTableModel();
         shipmentTable = new JTable(tableModel);
         shipmentTable.setFont(FONT_MAIN);
         shipmentTable.setRowHeight(28);
-        shipmentTable.getTableHeader().setFont(FONT_BOLD);
-        shipmentTable.getTableHeader().setBackground(COLOR_TABLE_HEADER);
-        shipmentTable.getTableHeader().setForeground(COLOR_TEXT_PRIMARY);
+        JTableHeader header = shipmentTable.getTableHeader();
+        header.setFont(FONT_BOLD);
+        header.setBackground(COLOR_TABLE_HEADER);
+        header.setForeground(COLOR_TEXT_PRIMARY);
+        header.setReorderingAllowed(false);
+        header.setToolTipText("Clique para ordenar");
+        // Ordenacao feita pelo modelo (vetor de indices), sem o TableRowSorter
+        header.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = header.columnAtPoint(e.getPoint());
+                if (column >= 0) sortShipments(shipmentTable.convertColumnIndexToModel(column));
+            }
+        });
         shipmentTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         shipmentTable.setFillsViewportHeight(true);
         shipmentTable.setShowGrid(true);
@@ -210,7 +229,7 @@ public class FtpClientGUI extends JFrame {
                 if (e.getClickCount() == 2) {
                     int row = shipmentTable.getSelectedRow();
                     if (row != -1) {
-                        String id = tableModel.getValueAt(row, 0).toString();
+                        String id = tableModel.getValueAt(row, ShipmentTableModel.ID).toString();
                         txtId.setText(id);
                         txtId.setForeground(COLOR_TEXT_PRIMARY);
                         log("ID '" + id + "' copiado para o campo de rastreio.", LogLevel.INFO);
@@ -220,7 +239,36 @@ public class FtpClientGUI extends JFrame {
         });
         JScrollPane scrollPane = new JScrollPane(shipmentTable);
         scrollPane.setBorder(new LineBorder(COLOR_BORDER));
-        return scrollPane;
+
+        txtFilter = createStyledTextField("");
+        txtFilter.setToolTipText("Filtrar por ID, nome ou status");
+        txtFilter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { tableModel.setFilter(txtFilter.getText()); }
+            @Override public void removeUpdate(DocumentEvent e) { tableModel.setFilter(txtFilter.getText()); }
+            @Override public void changedUpdate(DocumentEvent e) { }
+        });
+        JPanel filterPanel = new JPanel(new BorderLayout(8, 0));
+        filterPanel.setOpaque(false);
+        filterPanel.setBorder(new EmptyBorder(0, 0, 8, 0));
+        filterPanel.add(new JLabel("Filtrar:"), BorderLayout.WEST);
+        filterPanel.add(txtFilter, BorderLayout.CENTER);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setOpaque(false);
+        panel.add(filterPanel, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        return panel;
+    }
+
+    // Mostra a coluna ordenada e o sentido no cabecalho
+    private void sortShipments(int column) {
+        tableModel.sortBy(column);
+        for (int i = 0; i < tableModel.getColumnCount(); i++) {
+            String name = tableModel.getColumnName(i);
+            if (i == column) name += tableModel.isAscending() ? " \u25B2" : " \u25BC";
+            shipmentTable.getColumnModel().getColumn(shipmentTable.convertColumnIndexToView(i)).setHeaderValue(name);
+        }
+        shipmentTable.getTableHeader().repaint();
     }
 
     private JPanel createLogPanel() {
@@ -322,12 +370,12 @@ public class FtpClientGUI extends JFrame {
         txtPort.setEnabled(!isConnected);
 
         if (isConnected) {
-            lblStatus.setText("Conectado a " + controlSocket.getInetAddress().getHostAddress());
+            lblStatus.setText("Conectado a " + client.getHost() + ":" + client.getPort());
             lblStatus.setForeground(COLOR_SUCCESS);
         } else {
             lblStatus.setText("Desconectado");
             lblStatus.setForeground(COLOR_ERROR);
-            tableModel.setRowCount(0);
+            tableModel.clear();
         }
     }
 
@@ -347,94 +395,65 @@ public class FtpClientGUI extends JFrame {
     }
 
     private void connect() {
-        new Thread(() -> {
-            SwingUtilities.invokeLater(() -> lockUIForOperation("Conectando..."));
-            try {
-                controlSocket = new Socket(txtHost.getText(), Integer.parseInt(txtPort.getText()));
-                in = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
-                out = new PrintWriter(controlSocket.getOutputStream(), true);
-
-                // FTP "Handshake"
-                logResponse(); // 220
-                sendCommand("USER anonymous");
-                logResponse(); // 331
-                sendCommand("PASS guest@example.com");
-                logResponse(); // 230
-                sendCommand("TYPE I");
-                logResponse(); // 200
-
-                isConnected = true;
-                SwingUtilities.invokeLater(() -> {
-                    log("Conexão estabelecida com sucesso.", LogLevel.SUCCESS);
-                    listFiles(); // Atualiza a lista inicial
-                });
-            } catch (Exception ex) {
-                log("Erro de conexão: " + ex.getMessage(), LogLevel.ERROR);
-                isConnected = false;
-                if(!isConnected) SwingUtilities.invokeLater(this::unlockUI);
+        String host = txtHost.getText().trim();
+        int port;
+        try {
+            port = Integer.parseInt(txtPort.getText().trim());
+        } catch (NumberFormatException e) {
+            log("Porta invalida: " + txtPort.getText(), LogLevel.ERROR);
+            return;
+        }
+        lockUIForOperation("Conectando...");
+        CorreioClient newClient = new CorreioClient(host, port, MAX_CONNECTIONS, TIMEOUT_MILLIS, protocolLog);
+        newClient.setCompression(compressionLevel());
+        newClient.connect().whenComplete((ok, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                newClient.close();
+                log("Erro de conexão: " + describe(error), LogLevel.ERROR);
+                unlockUI();
+                return;
             }
-        }).start();
+            client = newClient;
+            isConnected = true;
+            log("Conexão estabelecida com sucesso.", LogLevel.SUCCESS);
+            listFiles(); // Atualiza a lista inicial
+        }));
     }
 
-    // Novo método para abrir a conexão de dados em modo passivo
-    private Socket openDataConnection() throws IOException {
-        sendCommand("PASV");
-        String response = logResponse(); // 227
-        Matcher matcher = PASV_PATTERN.matcher(response);
-        if (!matcher.matches()) {
-            throw new IOException("Resposta PASV invalida: " + response);
-        }
-        String ip = String.format("%s.%s.%s.%s", matcher.group(1), matcher.group(2), matcher.group(3), matcher.group(4));
-        int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
-
-        log("Abrindo conexão de dados para " + ip + ":" + port, LogLevel.INFO);
-        return new Socket(ip, port);
+    private int compressionLevel() {
+        return chkCompression.isSelected() ? DeflateStreams.DEFAULT_LEVEL : -1;
     }
 
     private void disconnect() {
         if (!isConnected) return;
-        new Thread(() -> {
-            SwingUtilities.invokeLater(() -> lockUIForOperation("Desconectando..."));
-            try {
-                if (out != null) sendCommand("QUIT");
-                logResponse(); // 221
-                if (controlSocket != null && !controlSocket.isClosed()) controlSocket.close();
-            } catch (IOException ex) {
-                log("Erro ao tentar desconectar: " + ex.getMessage(), LogLevel.ERROR);
-            } finally {
-                isConnected = false;
-                SwingUtilities.invokeLater(() -> {
-                    log("Desconectado do servidor.", LogLevel.WARN);
-                    unlockUI();
-                });
-            }
-        }).start();
+        lockUIForOperation("Desconectando...");
+        CorreioClient closing = client;
+        client = null;
+        isConnected = false;
+        // QUIT nas conexoes ociosas do pool sem travar a EDT
+        Thread.ofVirtual().start(() -> {
+            closing.close();
+            SwingUtilities.invokeLater(() -> {
+                log("Desconectado do servidor.", LogLevel.WARN);
+                unlockUI();
+            });
+        });
     }
 
     private void sendFile() {
         JFileChooser chooser = new JFileChooser();
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File file = chooser.getSelectedFile();
-            new Thread(() -> {
-                SwingUtilities.invokeLater(() -> lockUIForOperation("Enviando: " + file.getName()));
-                try (Socket dataSocket = openDataConnection()) { // Abre canal de dados
-
-                    sendCommand("STOR " + file.getName()); // Envia comando no canal de controle
-                    logResponse(); // 150
-
-                    // Envia dados brutos pelo canal de dados
-                    try (OutputStream dataOut = dataSocket.getOutputStream()) {
-                        Files.copy(file.toPath(), dataOut);
-                    }
-
-                    logResponse(); // 226
-                    listFiles(); // Atualiza a tabela
-
-                } catch (IOException e) {
-                    log("Erro ao enviar arquivo: " + e.getMessage(), LogLevel.ERROR);
-                    SwingUtilities.invokeLater(this::unlockUI);
+            lockUIForOperation("Enviando: " + file.getName());
+            client.upload(file.toPath()).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    log("Erro ao enviar arquivo: " + describe(error), LogLevel.ERROR);
+                    unlockUI();
+                    return;
                 }
-            }).start();
+                log("Arquivo enviado. ID de rastreio: " + result.trackingId(), LogLevel.SUCCESS);
+                listFiles(); // Atualiza a tabela
+            }));
         }
     }
 
@@ -455,59 +474,33 @@ public class FtpClientGUI extends JFrame {
 
         if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File selectedFile = chooser.getSelectedFile();
-            new Thread(() -> {
-                SwingUtilities.invokeLater(() -> lockUIForOperation("Baixando ID: " + id));
-                try (Socket dataSocket = openDataConnection()){
-
-                    sendCommand("RETR " + id);
-                    logResponse(); // 150
-
-                    // Recebe dados brutos pelo canal de dados
-                    try(InputStream dataIn = dataSocket.getInputStream()) {
-                        Files.copy(dataIn, selectedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
-
-                    logResponse(); // 226
-                    listFiles();
-
-                } catch (IOException e) {
-                    log("Erro ao baixar arquivo: " + e.getMessage(), LogLevel.ERROR);
-                    SwingUtilities.invokeLater(this::unlockUI);
+            lockUIForOperation("Baixando ID: " + id);
+            client.download(id, selectedFile.toPath()).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    log("Erro ao baixar arquivo: " + describe(error), LogLevel.ERROR);
+                    unlockUI();
+                    return;
                 }
-            }).start();
+                listFiles();
+            }));
         }
     }
 
     private void listFiles() {
-        new Thread(() -> {
-            SwingUtilities.invokeLater(() -> lockUIForOperation("Listando encomendas..."));
-            try (Socket dataSocket = openDataConnection()){
-
-                sendCommand("LIST");
-                logResponse(); // 150
-
-                SwingUtilities.invokeLater(() -> tableModel.setRowCount(0));
-
-                // Lê a listagem pelo canal de dados
-                try(BufferedReader dataIn = new BufferedReader(new InputStreamReader(dataSocket.getInputStream()))) {
-                    String line;
-                    while((line = dataIn.readLine()) != null) {
-                        String[] parts = line.split("\\|");
-                        if(parts.length == 4){
-                            final Object[] rowData = { parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim() };
-                            SwingUtilities.invokeLater(() -> tableModel.addRow(rowData));
-                        }
-                    }
+        lockUIForOperation("Listando encomendas...");
+        // As linhas vao para as colunas do modelo na thread do cliente e aparecem na tabela em lotes
+        ShipmentTableModel.Loader loader = tableModel.load();
+        client.list("", loader).whenComplete((page, error) -> {
+            loader.finish();
+            SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    log("Erro ao listar encomendas: " + describe(error), LogLevel.ERROR);
+                } else {
+                    log("Lista de encomendas atualizada (" + tableModel.getLoadedRowCount() + " encomendas).", LogLevel.SUCCESS);
                 }
-
-                logResponse(); // 226
-                log("Lista de encomendas atualizada.", LogLevel.SUCCESS);
-            } catch (IOException e) {
-                log("Erro ao listar encomendas: " + e.getMessage(), LogLevel.ERROR);
-            } finally {
-                SwingUtilities.invokeLater(this::unlockUI);
-            }
-        }).start();
+                unlockUI();
+            });
+        });
     }
 
     private void statusFile() {
@@ -516,35 +509,83 @@ public class FtpClientGUI extends JFrame {
             log("ID de rastreio não informado.", LogLevel.WARN);
             return;
         }
-        new Thread(() -> {
-            SwingUtilities.invokeLater(() -> lockUIForOperation("Verificando status do ID: " + id));
-            try {
-                sendCommand("STAT " + id);
-                // Respostas a STAT podem ser multiline
-                String line;
-                while((line = logResponse()).startsWith("211-")) {
-                    // Apenas loga, já que a ultima linha 211 será logada
-                }
-            } catch (IOException e) {
-                log("Erro ao verificar status: " + e.getMessage(), LogLevel.ERROR);
-            } finally {
-                SwingUtilities.invokeLater(this::unlockUI);
+        String[] ids = id.split("[,;\\s]+");
+        if (ids.length > 1) {
+            statusFiles(Arrays.asList(ids));
+            return;
+        }
+        lockUIForOperation("Verificando status do ID: " + id);
+        // As linhas da resposta 211 ja aparecem no log pelo protocolLog
+        client.status(id).whenComplete((info, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null && !(unwrap(error) instanceof FtpReplyException)) {
+                log("Erro ao verificar status: " + describe(error), LogLevel.ERROR);
             }
-        }).start();
+            unlockUI();
+        }));
     }
 
-    private void sendCommand(String command) {
-        log(command, LogLevel.SENT);
-        out.println(command);
+    // Varios IDs (separados por espaco ou virgula): STATs em pipeline e a coluna Status da tabela atualizada
+    private void statusFiles(List<String> ids) {
+        lockUIForOperation("Verificando status de " + ids.size() + " encomendas...");
+        client.status(ids).whenComplete((details, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                log("Erro ao verificar status: " + describe(error), LogLevel.ERROR);
+            } else {
+                Map<String, String> statuses = new HashMap<>();
+                int missing = 0;
+                for (Map.Entry<String, String> entry : details.entrySet()) {
+                    String detail = entry.getValue();
+                    if (detail == null) {
+                        missing++;
+                        continue;
+                    }
+                    // Linha de detalhe: "<id>: <nome> (<STATUS>)"
+                    int open = detail.lastIndexOf('(');
+                    if (open >= 0 && detail.endsWith(")")) {
+                        statuses.put(entry.getKey(), detail.substring(open + 1, detail.length() - 1));
+                    }
+                }
+                tableModel.updateStatuses(statuses);
+                log("Status de " + details.size() + " encomendas verificado"
+                        + (missing > 0 ? "; " + missing + " ID(s) não encontrado(s)." : "."),
+                        missing > 0 ? LogLevel.WARN : LogLevel.SUCCESS);
+            }
+            unlockUI();
+        }));
     }
 
-    private String logResponse() throws IOException {
-        String response = in.readLine();
-        if(response == null) throw new IOException("O servidor fechou a conexão inesperadamente.");
+    /** Espelha o dialogo do canal de controle no painel de log. */
+    private final ProtocolListener protocolLog = new ProtocolListener() {
+        @Override
+        public void commandSent(String command) {
+            log(command, LogLevel.SENT);
+        }
+
+        @Override
+        public void replyReceived(String reply) {
+            log(reply, reply.startsWith("5") || reply.startsWith("4") ? LogLevel.ERROR : LogLevel.RECV);
+        }
+
+        @Override
+        public void transferResumed(String id, long offset) {
+            log("Transferência interrompida; retomando ID " + id + " a partir do byte " + offset + ".", LogLevel.WARN);
+        }
+
+        @Override
+        public void transferCompressed(String command, long rawBytes, long wireBytes, long cpuNanos) {
+            double ratio = wireBytes == 0 ? 1 : (double) rawBytes / wireBytes;
+            log(String.format("MODE Z %s: %d bytes, %d no canal (%.2fx), CPU %.1f ms",
+                    command, rawBytes, wireBytes, ratio, cpuNanos / 1e6), LogLevel.INFO);
+        }
+    };
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
 
-        LogLevel level = response.startsWith("5") || response.startsWith("4") ? LogLevel.ERROR : LogLevel.RECV;
-        log(response, level);
-        return response;
+    private static String describe(Throwable error) {
+        Throwable cause = unwrap(error);
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
     }
 
     // --- Métodos de log e progresso (sem alterações) ---
@@ -0,0 +1,364 @@
+package correio.client;
+
+import correio.protocol.DeflateStreams;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Uma conexao de controle ja autenticada (USER/PASS/TYPE I). Sincrona e nao thread-safe:
+ * o {@link ConnectionPool} garante que so um chamador a usa por vez.
+ */
+final class FtpConnection implements Closeable {
+    private static final Pattern PASV_PATTERN = Pattern.compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+    private static final String CURSOR_MARKER = "Proximo cursor: ";
+    private static final String RESERVED_MARKER = "ID reservado: ";
+    // Linha de um ID inexistente na resposta do STAT com varios IDs
+    private static final String STATUS_NOT_FOUND = ": nao encontrado";
+    // Cabem folgados no limite de linha do servidor e mantem pequenos os bytes em andamento
+    private static final int IDS_PER_STAT = 100;
+    private static final int STAT_PIPELINE = 16;
+
+    private final String host;
+    private final int timeoutMillis;
+    private final ProtocolListener listener;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final byte[] buffer = new byte[64 * 1024];
+    // Nivel do MODE Z negociado nesta conexao (-1 = MODE S)
+    private int deflateLevel = -1;
+    private boolean deflateRefused;
+    long lastUsedNanos;
+    int operations;
+    int replies;
+
+    FtpConnection(String host, int port, int timeoutMillis, String user, String password, ProtocolListener listener) throws IOException {
+        this.host = host;
+        this.timeoutMillis = timeoutMillis;
+        this.listener = listener;
+        this.socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            // Handshake feito uma unica vez por conexao
+            expect(readReply(), "220");
+            expect(command("USER " + user), "331");
+            expect(command("PASS " + password), "230");
+            expect(command("TYPE I"), "200");
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    String remoteAddress() {
+        return socket.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * Ajusta o modo de transferencia: {@code level >= 0} pede MODE Z com esse nivel (OPTS MODE Z
+     * LEVEL), -1 volta ao MODE S. So envia comandos quando o modo muda; um servidor que recusa o
+     * MODE Z continua em MODE S, sem compressao.
+     */
+    void compression(int level) throws IOException {
+        if (deflateRefused || level == deflateLevel) return;
+        if (level < 0) {
+            expect(command("MODE S"), "200");
+        } else {
+            String reply = command("OPTS MODE Z LEVEL " + level);
+            if (reply.startsWith("200")) reply = command("MODE Z");
+            if (!reply.startsWith("200")) {
+                if (!reply.startsWith("5")) throw new FtpReplyException(reply);
+                deflateRefused = true;
+                if (deflateLevel >= 0) expect(command("MODE S"), "200");
+                deflateLevel = -1;
+                return;
+            }
+        }
+        deflateLevel = level;
+    }
+
+    /**
+     * ALLO (se o tamanho for conhecido) + PASV + STOR; o 226 traz o ID de rastreio.
+     * Com {@code offset >= 0} retoma um upload interrompido: envia {@code REST offset} e
+     * {@code STOR <id>}, e {@code content} deve comecar no byte {@code offset}.
+     *
+     * @param contentName nome original do arquivo; em MODE Z, formatos ja comprimidos vao sem compressao
+     * @param onReserved recebe o ID reservado anunciado no 150, antes dos dados
+     */
+    TransferResult store(String remoteName, String contentName, long length, InputStream content, long offset,
+                         Consumer<String> onReserved) throws IOException {
+        if (length >= 0) expect(command("ALLO " + length), "200");
+        try (Socket data = openDataConnection()) {
+            if (offset >= 0) expect(command("REST " + offset), "350");
+            long sent = System.nanoTime();
+            String started = command("STOR " + remoteName);
+            long preliminary = expectPreliminary(started);
+            int marker = started.indexOf(RESERVED_MARKER);
+            if (marker >= 0 && onReserved != null) onReserved.accept(started.substring(marker + RESERVED_MARKER.length()).trim());
+            long total = 0;
+            DeflateStreams.Output deflated = deflateLevel >= 0
+                    ? new DeflateStreams.Output(data.getOutputStream(), DeflateStreams.levelFor(contentName, deflateLevel))
+                    : null;
+            OutputStream dataOut = deflated != null ? deflated : data.getOutputStream();
+            int n;
+            while ((n = content.read(buffer)) > 0) {
+                dataOut.write(buffer, 0, n);
+                total += n;
+            }
+            if (deflated != null) deflated.complete(); // fim do fluxo zlib
+            data.shutdownOutput(); // fim do arquivo para o servidor
+            String reply = expect(readReply(), "226");
+            if (deflated != null) report(deflated.report(), "STOR " + remoteName);
+            return new TransferResult(reply, total, sent, preliminary, System.nanoTime());
+        }
+    }
+
+    /** RETR a partir do byte {@code offset} (com REST quando maior que zero). */
+    TransferResult retrieve(String id, OutputStream sink, long offset) throws IOException {
+        try (Socket data = openDataConnection()) {
+            if (offset > 0) expect(command("REST " + offset), "350");
+            long sent = System.nanoTime();
+            long preliminary = expectPreliminary(command("RETR " + id));
+            long total = 0;
+            DeflateStreams.Input inflated = inflating(data);
+            InputStream dataIn = inflated != null ? inflated : data.getInputStream();
+            int n;
+            while ((n = dataIn.read(buffer)) > 0) {
+                sink.write(buffer, 0, n);
+                total += n;
+            }
+            String reply = expect(readReply(), "226");
+            reported(inflated, "RETR " + id);
+            return new TransferResult(reply, total, sent, preliminary, System.nanoTime());
+        }
+    }
+
+    /**
+     * RANG + RETR: baixa os bytes {@code start..end} (inclusivo) gravando-os na mesma posicao de
+     * {@code target}. {@code progress} recebe cada bloco gravado, para o chamador saber onde
+     * retomar se a conexao cair no meio do segmento.
+     */
+    TransferResult retrieveRange(String id, long start, long end, FileChannel target, LongConsumer progress) throws IOException {
+        try (Socket data = openDataConnection()) {
+            expect(command("RANG " + start + " " + end), "350");
+            long sent = System.nanoTime();
+            long preliminary = expectPreliminary(command("RETR " + id));
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            long position = start;
+            DeflateStreams.Input inflated = inflating(data);
+            InputStream dataIn = inflated != null ? inflated : data.getInputStream();
+            int n;
+            while ((n = dataIn.read(buffer)) > 0) {
+                chunk.clear().limit(n);
+                while (chunk.hasRemaining()) position += target.write(chunk, position);
+                progress.accept(n);
+            }
+            String reply = expect(readReply(), "226");
+            reported(inflated, "RETR " + id + " (" + start + "-" + end + ")");
+            return new TransferResult(reply, position - start, sent, preliminary, System.nanoTime());
+        }
+    }
+
+    ListPage list(String args) throws IOException {
+        List<ShipmentRow> rows = new ArrayList<>();
+        ListPage page = list(args, rows::add);
+        return new ListPage(rows, page.nextCursor(), page.transfer());
+    }
+
+    /** LIST entregando cada linha a {@code sink} assim que e lida; a pagina retornada vem sem linhas. */
+    ListPage list(String args, Consumer<ShipmentRow> sink) throws IOException {
+        try (Socket data = openDataConnection()) {
+            long sent = System.nanoTime();
+            long preliminary = expectPreliminary(command(args == null || args.isBlank() ? "LIST" : "LIST " + args.trim()));
+            long total = 0;
+            DeflateStreams.Input inflated = inflating(data);
+            BufferedReader dataIn = new BufferedReader(new InputStreamReader(
+                    inflated != null ? inflated : data.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            String line;
+            while ((line = dataIn.readLine()) != null) {
+                total += line.length() + 1;
+                ShipmentRow row = ShipmentRow.parse(line);
+                if (row != null) sink.accept(row);
+            }
+            String reply = expect(readReply(), "226");
+            reported(inflated, "LIST");
+            int marker = reply.indexOf(CURSOR_MARKER);
+            String nextCursor = marker < 0 ? null : reply.substring(marker + CURSOR_MARKER.length()).trim();
+            return new ListPage(List.of(), nextCursor, new TransferResult(reply, total, sent, preliminary, System.nanoTime()));
+        }
+    }
+
+    /** SIZE: tamanho da encomenda ou bytes ja recebidos de um upload interrompido. */
+    long size(String id) throws IOException {
+        String reply = expect(command("SIZE " + id), "213");
+        try {
+            return Long.parseLong(reply.substring(4).trim());
+        } catch (RuntimeException e) {
+            throw new FtpReplyException(reply);
+        }
+    }
+
+    /** STAT em um ID; retorna a linha de detalhe da resposta multiline 211. */
+    String status(String id) throws IOException {
+        String reply = command("STAT " + id);
+        if (!reply.startsWith("211-")) throw new FtpReplyException(reply);
+        StringBuilder detail = new StringBuilder();
+        String line;
+        while (!(line = readReply()).startsWith("211 ")) {
+            if (detail.length() > 0) detail.append('\n');
+            detail.append(line.trim());
+        }
+        return detail.toString();
+    }
+
+    /**
+     * STAT em varios IDs: envia {@code STAT id1 id2 ...} com ate {@value #IDS_PER_STAT} IDs por
+     * comando e mantem ate {@value #STAT_PIPELINE} comandos em andamento (pipelining), em vez de
+     * esperar a resposta de cada um. Retorna a linha de detalhe de cada ID, na ordem pedida,
+     * ou null para os IDs nao encontrados.
+     */
+    Map<String, String> status(List<String> ids) throws IOException {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IDS_PER_STAT) {
+            batches.add(ids.subList(i, Math.min(ids.size(), i + IDS_PER_STAT)));
+        }
+        Map<String, String> details = new LinkedHashMap<>();
+        FtpReplyException failure = null;
+        int sent = 0;
+        for (int received = 0; received < batches.size(); received++) {
+            // Poucos comandos em andamento: o servidor nunca fica esperando o cliente ler para
+            // continuar lendo, entao as duas pontas nao travam escrevendo ao mesmo tempo
+            if (sent < batches.size()) {
+                while (sent < batches.size() && sent < received + STAT_PIPELINE) {
+                    String line = "STAT " + String.join(" ", batches.get(sent++));
+                    listener.commandSent(line);
+                    out.print(line + "\r\n");
+                }
+                out.flush();
+                if (out.checkError()) throw new IOException("Falha ao enviar comando ao servidor");
+            }
+            List<String> batch = batches.get(received);
+            String reply = readReply();
+            if (reply.startsWith("211-")) {
+                for (String id : batch) {
+                    String detail = readReply().trim();
+                    details.put(id, detail.equals(id + STATUS_NOT_FOUND) ? null : detail);
+                }
+                expect(readReply(), "211 ");
+            } else if (reply.startsWith("550") && batch.size() == 1) {
+                details.put(batch.get(0), null);
+            } else if (failure == null) {
+                // Le as respostas dos comandos ja enviados antes de falhar, para o dialogo continuar em ordem
+                failure = new FtpReplyException(reply);
+            }
+        }
+        if (failure != null) throw failure;
+        return details;
+    }
+
+    private DeflateStreams.Input inflating(Socket data) throws IOException {
+        return deflateLevel >= 0 ? new DeflateStreams.Input(data.getInputStream()) : null;
+    }
+
+    // Fecha o inflater (o fluxo ja terminou) e repassa as medidas ao listener
+    private void reported(DeflateStreams.Input inflated, String command) throws IOException {
+        if (inflated == null) return;
+        inflated.close();
+        report(inflated.report(), command);
+    }
+
+    private void report(DeflateStreams.Report report, String command) {
+        listener.transferCompressed(command, report.rawBytes(), report.wireBytes(), report.cpuNanos());
+    }
+
+    private Socket openDataConnection() throws IOException {
+        String reply = expect(command("PASV"), "227");
+        Matcher matcher = PASV_PATTERN.matcher(reply);
+        if (!matcher.find()) throw new FtpReplyException(reply);
+        String ip = matcher.group(1) + "." + matcher.group(2) + "." + matcher.group(3) + "." + matcher.group(4);
+        // Servidor atras de NAT ou escutando em todas as interfaces: usa o host do controle
+        if (ip.equals("0.0.0.0")) ip = host;
+        int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+        Socket data = new Socket();
+        try {
+            data.connect(new InetSocketAddress(ip, port), timeoutMillis);
+            data.setSoTimeout(timeoutMillis);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        return data;
+    }
+
+    private long expectPreliminary(String reply) throws IOException {
+        expect(reply, "150");
+        return System.nanoTime();
+    }
+
+    private String command(String line) throws IOException {
+        listener.commandSent(line);
+        out.println(line);
+        if (out.checkError()) throw new IOException("Falha ao enviar comando ao servidor");
+        return readReply();
+    }
+
+    private String readReply() throws IOException {
+        String reply = in.readLine();
+        if (reply == null) throw new IOException("O servidor fechou a conexão inesperadamente.");
+        replies++;
+        listener.replyReceived(reply);
+        return reply;
+    }
+
+    private static String expect(String reply, String code) throws FtpReplyException {
+        if (!reply.startsWith(code)) throw new FtpReplyException(reply);
+        return reply;
+    }
+
+    /** Encerra com QUIT, ignorando erros (a conexao pode ja ter caido). */
+    @Override
+    public void close() {
+        try {
+            if (!socket.isClosed()) command("QUIT");
+        } catch (IOException ignored) {
+        } finally {
+            abort();
+        }
+    }
+
+    /** Fecha o socket sem QUIT; usado quando o dialogo pode estar dessincronizado. */
+    void abort() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package correio.client;
+
+import java.io.IOException;
+
+/** O servidor respondeu com um codigo de erro (4xx/5xx) ou inesperado. */
+public class FtpReplyException extends IOException {
+    private final String reply;
+
+    public FtpReplyException(String reply) {
+        super(reply);
+        this.reply = reply;
+    }
+
+    /** Linha de resposta completa, ex.: {@code 550 ID nao encontrado}. */
+    public String getReply() { return reply; }
+
+    /** Codigo numerico da resposta, ou -1 se a linha nao comecar com um codigo. */
+    public int getCode() {
+        try {
+            return Integer.parseInt(reply.substring(0, 3));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package correio.client;
+
+import java.util.List;
+
+/**
+ * Uma pagina do LIST. {@code nextCursor} e null na ultima pagina; caso contrario, passe
+ * {@code cursor=<nextCursor>} no proximo LIST para continuar.
+ */
+public record ListPage(List<ShipmentRow> rows, String nextCursor, TransferResult transfer) {
+}
@@ -0,0 +1,26 @@
+package correio.client;
+
+/**
+ * Observa o dialogo no canal de controle (ex.: para mostrar o log na interface).
+ * Chamado pelas threads do cliente; implementacoes devem ser thread-safe e rapidas.
+ */
+public interface ProtocolListener {
+    ProtocolListener NONE = new ProtocolListener() {};
+
+    default void commandSent(String command) {
+    }
+
+    default void replyReceived(String reply) {
+    }
+
+    /** Uma transferencia interrompida vai ser retomada a partir de {@code offset}. */
+    default void transferResumed(String id, long offset) {
+    }
+
+    /**
+     * Uma transferencia em MODE Z terminou: {@code rawBytes} de conteudo viraram {@code wireBytes}
+     * no canal de dados, com {@code cpuNanos} gastos comprimindo ou descomprimindo.
+     */
+    default void transferCompressed(String command, long rawBytes, long wireBytes, long cpuNanos) {
+    }
+}
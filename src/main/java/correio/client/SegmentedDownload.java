@@ -0,0 +1,169 @@
+package correio.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Download de um arquivo grande em intervalos buscados em paralelo, cada um por uma conexao.
+ * Os dois parametros se ajustam sozinhos durante o download:
+ * <ul>
+ *   <li>conexoes: comeca com uma e abre outra a cada segmento concluido enquanto a vazao total
+ *       subir pelo menos {@link #MIN_GAIN}; para ao primeiro ganho menor (link ja cheio);</li>
+ *   <li>tamanho do segmento: cada conexao pede o equivalente a {@link #SEGMENT_TARGET_NANOS} na
+ *       vazao que ela mediu, e os segmentos encolhem no fim para as conexoes terminarem juntas.</li>
+ * </ul>
+ */
+final class SegmentedDownload {
+    /** Abaixo disso uma unica conexao de dados basta. */
+    static final long MIN_SIZE = 16L * 1024 * 1024;
+    /** Uma conexao extra so e aberta se ainda faltar pelo menos isso do arquivo. */
+    private static final long BYTES_PER_STREAM = 8L * 1024 * 1024;
+    private static final long MIN_SEGMENT = 1024 * 1024;
+    private static final long MAX_SEGMENT = 64L * 1024 * 1024;
+    private static final long FIRST_SEGMENT = 4 * MIN_SEGMENT;
+    /** Duracao alvo de um segmento: longo para diluir o PASV/RANG/RETR, curto para balancear o fim. */
+    private static final long SEGMENT_TARGET_NANOS = TimeUnit.SECONDS.toNanos(2);
+    /** Janela minima de medicao antes de decidir abrir outra conexao. */
+    private static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final double MIN_GAIN = 1.10;
+
+    /** Busca os bytes start..end (inclusivo), informando cada bloco gravado. */
+    @FunctionalInterface
+    interface RangeFetcher {
+        TransferResult fetch(long start, long end, LongConsumer progress) throws IOException, InterruptedException;
+    }
+
+    /** Decide (e espera o backoff) se uma falha deve ser tentada de novo. */
+    @FunctionalInterface
+    interface RetryPolicy {
+        boolean retry(IOException failure, int attempt) throws InterruptedException;
+    }
+
+    private final long size;
+    private final int maxStreams;
+    private final RangeFetcher fetcher;
+    private final RetryPolicy retryPolicy;
+    private final LongConsumer onResume;
+    private final Executor executor;
+
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong firstPreliminary = new AtomicLong(Long.MAX_VALUE);
+    private final List<CompletableFuture<Void>> workers = new CopyOnWriteArrayList<>();
+
+    // Ajuste do numero de conexoes, protegido pelo monitor deste objeto
+    private int streams;
+    private boolean growing = true;
+    private long windowStart;
+    private long windowBytes;
+    private double lastRate;
+
+    SegmentedDownload(long size, int maxStreams, RangeFetcher fetcher, RetryPolicy retryPolicy,
+                      LongConsumer onResume, Executor executor) {
+        this.size = size;
+        this.maxStreams = maxStreams;
+        this.fetcher = fetcher;
+        this.retryPolicy = retryPolicy;
+        this.onResume = onResume;
+        this.executor = executor;
+    }
+
+    /** Baixa o arquivo inteiro; retorna o instante do primeiro 150 recebido. */
+    long run() throws IOException, InterruptedException {
+        synchronized (this) {
+            windowStart = System.nanoTime();
+            addWorker();
+        }
+        // Conexoes so sao abertas por conexoes ainda ativas: se a lista nao cresceu, acabou
+        int seen;
+        do {
+            seen = workers.size();
+            try {
+                CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                if (e.getCause() instanceof InterruptedException ie) throw ie;
+                throw e;
+            }
+        } while (workers.size() != seen);
+        return firstPreliminary.get();
+    }
+
+    synchronized int streams() {
+        return streams;
+    }
+
+    private void addWorker() {
+        streams++;
+        workers.add(CompletableFuture.runAsync(() -> {
+            try {
+                work();
+            } catch (IOException | InterruptedException e) {
+                cursor.set(size); // as demais conexoes param no proximo segmento
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    private void work() throws IOException, InterruptedException {
+        long segment = FIRST_SEGMENT;
+        while (true) {
+            long start = cursor.get();
+            if (start >= size) return;
+            // Perto do fim, segmentos menores evitam que uma conexao fique sozinha com um pedaco grande
+            long length = Math.min(segment, Math.max(MIN_SEGMENT, (size - start) / streams()));
+            long end = Math.min(size, start + length);
+            if (!cursor.compareAndSet(start, end)) continue;
+
+            long begin = System.nanoTime();
+            fetch(start, end - 1);
+            long elapsed = Math.max(1, System.nanoTime() - begin);
+            segment = Math.max(MIN_SEGMENT, Math.min(MAX_SEGMENT, (long) ((end - start) * (double) SEGMENT_TARGET_NANOS / elapsed)));
+            segmentDone();
+        }
+    }
+
+    private void fetch(long start, long end) throws IOException, InterruptedException {
+        AtomicLong written = new AtomicLong();
+        for (int attempt = 1; ; attempt++) {
+            long from = start + written.get();
+            if (from > end) return;
+            try {
+                TransferResult part = fetcher.fetch(from, end, n -> {
+                    written.addAndGet(n);
+                    received.addAndGet(n);
+                });
+                firstPreliminary.accumulateAndGet(part.preliminaryNanos(), Math::min);
+                return;
+            } catch (IOException e) {
+                if (!retryPolicy.retry(e, attempt)) throw e;
+                onResume.accept(start + written.get());
+            }
+        }
+    }
+
+    // Mede a vazao total desde a ultima conexao aberta e decide se vale abrir mais uma
+    private synchronized void segmentDone() {
+        if (!growing || streams >= maxStreams) return;
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed < MIN_WINDOW_NANOS) return;
+        long bytes = received.get();
+        double rate = (bytes - windowBytes) / (double) elapsed;
+        if ((lastRate > 0 && rate < lastRate * MIN_GAIN) || size - cursor.get() < BYTES_PER_STREAM) {
+            growing = false;
+            return;
+        }
+        lastRate = rate;
+        windowStart = now;
+        windowBytes = bytes;
+        addWorker();
+    }
+}
@@ -0,0 +1,12 @@
+package correio.client;
+
+/** Uma linha da listagem do LIST: {@code ID | nome | status | data de envio}. */
+public record ShipmentRow(String id, String filename, String status, String sentAt) {
+
+    /** Interpreta uma linha da conexao de dados; retorna null se nao for uma linha de encomenda. */
+    public static ShipmentRow parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length != 4) return null;
+        return new ShipmentRow(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim());
+    }
+}
@@ -0,0 +1,364 @@
+package correio.client;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Modelo da tabela de encomendas guardado em colunas: blocos de {@value #CHUNK} linhas com o ID
+ * e a data de envio como {@code long} e nome e status como referencias para Strings
+ * compartilhadas (nomes repetidos ocupam uma unica String). O texto das celulas so e montado
+ * em {@link #getValueAt}, para as linhas visiveis; o {@code DefaultTableModel} guardava um
+ * {@code Vector} e quatro Strings por linha.
+ *
+ * A listagem e carregada por um {@link Loader}: as linhas sao gravadas nas colunas pela thread
+ * que le o LIST, fora da EDT, e publicadas em lotes. Enquanto uma publicacao aguarda a EDT as
+ * seguintes se acumulam nela, e cada uma dispara um unico evento para todas as linhas novas.
+ *
+ * Ordenacao e filtro nao copiam os dados: as linhas exibidas sao um vetor de indices
+ * ({@code int[]}) sobre as colunas. Exceto pelo {@link Loader}, use so na EDT.
+ */
+public final class ShipmentTableModel extends AbstractTableModel {
+    public static final int ID = 0, FILENAME = 1, STATUS = 2, SENT_AT = 3;
+    static final int CHUNK = 4096;
+    private static final int CHUNK_SHIFT = 12;
+    // Linhas gravadas entre publicacoes; a EDT recebe no maximo um evento pendente por vez
+    private static final int PUBLISH_EVERY = 2048;
+    private static final String[] COLUMNS = { "ID", "Nome do Arquivo", "Status", "Data de Envio" };
+    private static final long RAW = -1; // valor fora do formato: o texto original fica em raw*
+
+    /** Bloco de linhas; o {@link Loader} so grava alem das linhas ja publicadas. */
+    private static final class Chunk {
+        final long[] ids = new long[CHUNK];
+        final String[] filenames = new String[CHUNK];
+        final String[] statuses = new String[CHUNK];
+        final long[] sentAt = new long[CHUNK];
+        String[] rawIds;   // criados so se aparecer um ID ou data fora do formato
+        String[] rawDates;
+    }
+
+    private record Published(Chunk[] chunks, int rows) {
+    }
+
+    private Chunk[] chunks = new Chunk[0];
+    private int size;
+    private int generation;
+    private int[] view; // linhas exibidas, na ordem; null = todas, na ordem da listagem
+    private int viewSize;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private String filter = "";
+
+    @Override
+    public int getRowCount() {
+        return view == null ? size : viewSize;
+    }
+
+    /** Total de encomendas carregadas, incluindo as escondidas pelo filtro. */
+    public int getLoadedRowCount() {
+        return size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int column) {
+        int row = view == null ? rowIndex : view[rowIndex];
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & (CHUNK - 1);
+        return switch (column) {
+            case ID -> chunk.ids[i] == RAW ? chunk.rawIds[i] : formatId(chunk.ids[i]);
+            case FILENAME -> chunk.filenames[i];
+            case STATUS -> chunk.statuses[i];
+            case SENT_AT -> chunk.sentAt[i] == RAW ? chunk.rawDates[i] : formatDate(chunk.sentAt[i]);
+            default -> throw new IndexOutOfBoundsException(column);
+        };
+    }
+
+    /** Esvazia a tabela; um carregamento em andamento deixa de ser publicado. */
+    public void clear() {
+        generation++;
+        chunks = new Chunk[0];
+        size = 0;
+        if (view != null) view = new int[0];
+        viewSize = 0;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Esvazia a tabela e comeca um novo carregamento. O {@link Loader} pode ser usado por
+     * outra thread (uma por vez); ordenacao e filtro atuais se aplicam as linhas que chegarem.
+     */
+    public Loader load() {
+        clear();
+        return new Loader(generation);
+    }
+
+    /**
+     * Ordena pela coluna; chamar de novo com a mesma coluna inverte a ordem. A ordenacao e
+     * estavel, entao empates mantem a ordem da listagem.
+     */
+    public void sortBy(int column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        refreshView();
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /** Mostra so as linhas cujo ID, nome ou status contem o texto (sem diferenciar maiusculas). */
+    public void setFilter(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) return;
+        filter = normalized;
+        refreshView();
+    }
+
+    /**
+     * Troca o status das linhas cujo ID esta em {@code statusById} (ex.: depois de um STAT em
+     * lote) e retorna quantas mudaram.
+     */
+    public int updateStatuses(Map<String, String> statusById) {
+        Map<String, String> shared = new HashMap<>();
+        int changed = 0;
+        for (int row = 0; row < size; row++) {
+            Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+            int i = row & (CHUNK - 1);
+            String status = statusById.get(chunk.ids[i] == RAW ? chunk.rawIds[i] : formatId(chunk.ids[i]));
+            if (status == null || status.equals(chunk.statuses[i])) continue;
+            chunk.statuses[i] = shared.computeIfAbsent(status, s -> s);
+            changed++;
+        }
+        if (changed == 0) return 0;
+        if (sortColumn == STATUS || !filter.isEmpty()) {
+            refreshView();
+        } else {
+            fireTableRowsUpdated(0, getRowCount() - 1);
+        }
+        return changed;
+    }
+
+    // Chamado na EDT com as linhas publicadas pelo Loader
+    private void publish(int loadGeneration, Published published) {
+        if (loadGeneration != generation || published.rows() <= size) return;
+        int first = size;
+        chunks = published.chunks();
+        size = published.rows();
+        if (view == null) {
+            fireTableRowsInserted(first, size - 1);
+        } else {
+            refreshView();
+        }
+    }
+
+    private void refreshView() {
+        if (sortColumn < 0 && filter.isEmpty()) {
+            view = null;
+        } else {
+            int[] rows = view != null && view.length >= size ? view : new int[size];
+            int n = 0;
+            IdentityHashMap<String, Boolean> matches = new IdentityHashMap<>();
+            for (int row = 0; row < size; row++) {
+                if (filter.isEmpty() || matches(row, matches)) rows[n++] = row;
+            }
+            if (sortColumn >= 0) mergeSort(rows, n, comparator(sortColumn, ascending));
+            view = rows;
+            viewSize = n;
+        }
+        fireTableDataChanged();
+    }
+
+    // Nomes e status repetidos sao a mesma String: o resultado de cada uma e calculado uma vez
+    private boolean matches(int row, IdentityHashMap<String, Boolean> cache) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & (CHUNK - 1);
+        String id = chunk.ids[i] == RAW ? chunk.rawIds[i] : formatId(chunk.ids[i]);
+        return id.toLowerCase(Locale.ROOT).contains(filter)
+                || cache.computeIfAbsent(chunk.filenames[i], s -> s.toLowerCase(Locale.ROOT).contains(filter))
+                || cache.computeIfAbsent(chunk.statuses[i], s -> s.toLowerCase(Locale.ROOT).contains(filter));
+    }
+
+    private IntBinaryOperator comparator(int column, boolean ascending) {
+        IntBinaryOperator order = switch (column) {
+            case ID -> (a, b) -> {
+                long x = chunks[a >>> CHUNK_SHIFT].ids[a & (CHUNK - 1)];
+                long y = chunks[b >>> CHUNK_SHIFT].ids[b & (CHUNK - 1)];
+                if (x != RAW && y != RAW) return Long.compare(x, y);
+                // IDs fora do formato numerico vem depois, em ordem de texto
+                if (x != RAW || y != RAW) return x != RAW ? -1 : 1;
+                return compareText(chunks[a >>> CHUNK_SHIFT].rawIds[a & (CHUNK - 1)],
+                        chunks[b >>> CHUNK_SHIFT].rawIds[b & (CHUNK - 1)]);
+            };
+            case FILENAME -> (a, b) -> compareText(chunks[a >>> CHUNK_SHIFT].filenames[a & (CHUNK - 1)],
+                    chunks[b >>> CHUNK_SHIFT].filenames[b & (CHUNK - 1)]);
+            case STATUS -> (a, b) -> compareText(chunks[a >>> CHUNK_SHIFT].statuses[a & (CHUNK - 1)],
+                    chunks[b >>> CHUNK_SHIFT].statuses[b & (CHUNK - 1)]);
+            case SENT_AT -> (a, b) -> {
+                long x = chunks[a >>> CHUNK_SHIFT].sentAt[a & (CHUNK - 1)];
+                long y = chunks[b >>> CHUNK_SHIFT].sentAt[b & (CHUNK - 1)];
+                if (x != RAW && y != RAW) return Long.compare(x, y);
+                if (x != RAW || y != RAW) return x != RAW ? -1 : 1;
+                return compareText(chunks[a >>> CHUNK_SHIFT].rawDates[a & (CHUNK - 1)],
+                        chunks[b >>> CHUNK_SHIFT].rawDates[b & (CHUNK - 1)]);
+            };
+            default -> throw new IndexOutOfBoundsException(column);
+        };
+        return ascending ? order : (a, b) -> order.applyAsInt(b, a);
+    }
+
+    private static int compareText(String a, String b) {
+        return a == b ? 0 : a.compareTo(b);
+    }
+
+    // Merge sort estavel direto no vetor de indices, sem Integer
+    private static void mergeSort(int[] rows, int n, IntBinaryOperator order) {
+        int[] from = rows;
+        int[] to = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) to[k++] = order.applyAsInt(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                while (i < mid) to[k++] = from[i++];
+                while (j < hi) to[k++] = from[j++];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != rows) System.arraycopy(from, 0, rows, 0, n);
+    }
+
+    /**
+     * Grava as linhas de uma listagem nas colunas. Usado por uma thread de cada vez, fora da
+     * EDT; as linhas ficam visiveis a cada {@value #PUBLISH_EVERY} e em {@link #finish()}.
+     */
+    public final class Loader implements Consumer<ShipmentRow> {
+        private final int loadGeneration;
+        private final Map<String, String> shared = new HashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile Published published = new Published(new Chunk[0], 0);
+        private Chunk[] loaded = new Chunk[16];
+        private int rows;
+
+        private Loader(int loadGeneration) {
+            this.loadGeneration = loadGeneration;
+        }
+
+        @Override
+        public void accept(ShipmentRow row) {
+            int index = rows & (CHUNK - 1);
+            int chunkIndex = rows >>> CHUNK_SHIFT;
+            if (index == 0) {
+                // So grava em posicoes alem das publicadas: a EDT le o mesmo vetor sem trava
+                if (chunkIndex == loaded.length) loaded = Arrays.copyOf(loaded, loaded.length * 2);
+                loaded[chunkIndex] = new Chunk();
+            }
+            Chunk chunk = loaded[chunkIndex];
+            long id = parseId(row.id());
+            chunk.ids[index] = id;
+            if (id == RAW) {
+                if (chunk.rawIds == null) chunk.rawIds = new String[CHUNK];
+                chunk.rawIds[index] = row.id();
+            }
+            chunk.filenames[index] = shared.computeIfAbsent(row.filename(), s -> s);
+            chunk.statuses[index] = shared.computeIfAbsent(row.status(), s -> s);
+            long sentAt = parseDate(row.sentAt());
+            chunk.sentAt[index] = sentAt;
+            if (sentAt == RAW) {
+                if (chunk.rawDates == null) chunk.rawDates = new String[CHUNK];
+                chunk.rawDates[index] = row.sentAt();
+            }
+            if (++rows % PUBLISH_EVERY == 0) publish();
+        }
+
+        /** Publica as linhas restantes; chame ao fim da listagem, mesmo se ela falhar no meio. */
+        public void finish() {
+            publish();
+        }
+
+        private void publish() {
+            published = new Published(loaded, rows);
+            // Se ja ha uma publicacao na fila da EDT, ela le o estado mais recente ao rodar
+            if (scheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    scheduled.set(false);
+                    ShipmentTableModel.this.publish(loadGeneration, published);
+                });
+            }
+        }
+    }
+
+    // IDs no formato do servidor (%04d) viram long; os demais ficam como texto
+    static long parseId(String id) {
+        int length = id.length();
+        if (length < 4 || length > 18 || (length > 4 && id.charAt(0) == '0')) return RAW;
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return RAW;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    static String formatId(long id) {
+        String digits = Long.toString(id);
+        return digits.length() >= 4 ? digits : "0000".substring(digits.length()) + digits;
+    }
+
+    // "AAAA-MM-DD HH:MM:SS" vira o long AAAAMMDDHHMMSS, que ordena como a data
+    static long parseDate(String text) {
+        if (text.length() != 19) return RAW;
+        long value = 0;
+        for (int i = 0; i < 19; i++) {
+            char c = text.charAt(i);
+            char expected = i == 4 || i == 7 ? '-' : i == 10 ? ' ' : i == 13 || i == 16 ? ':' : '0';
+            if (expected != '0') {
+                if (c != expected) return RAW;
+            } else if (c < '0' || c > '9') {
+                return RAW;
+            } else {
+                value = value * 10 + (c - '0');
+            }
+        }
+        return value;
+    }
+
+    static String formatDate(long value) {
+        char[] text = "0000-00-00 00:00:00".toCharArray();
+        for (int i = 18; i >= 0; i--) {
+            if (text[i] != '0') continue;
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(text);
+    }
+}
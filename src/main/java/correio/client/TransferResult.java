@@ -0,0 +1,19 @@
+package correio.client;
+
+/**
+ * Resultado de uma transferencia (STOR, RETR ou LIST) com os instantes, em
+ * {@link System#nanoTime()}, em que o comando foi enviado, o 150 chegou e o 226 chegou.
+ */
+public record TransferResult(String reply, long bytes, long sentNanos, long preliminaryNanos, long completedNanos) {
+
+    /** ID de rastreio informado no 226 de um STOR ("... ID de rastreio: 0001"). */
+    public String trackingId() {
+        return reply.substring(reply.lastIndexOf(' ') + 1).trim();
+    }
+
+    /** Tempo entre o envio do comando e o 150 (abertura da transferencia). */
+    public long timeToPreliminaryNanos() { return preliminaryNanos - sentNanos; }
+
+    /** Tempo entre o envio do comando e o 226 (transferencia concluida). */
+    public long timeToCompletionNanos() { return completedNanos - sentNanos; }
+}
@@ -0,0 +1,148 @@
+package correio.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Streams do MODE Z, usados pelo servidor e pelo cliente: no canal de dados trafega um fluxo zlib
+ * (deflate) e os offsets de REST/RANG continuam contando bytes do arquivo, nao do fluxo comprimido.
+ * Os streams medem os bytes de cada lado e o tempo gasto dentro do deflate/inflate (sem o I/O do
+ * socket), reportados por transferencia.
+ */
+public final class DeflateStreams {
+    public static final int DEFAULT_LEVEL = 6;
+    // Formatos que ja saem comprimidos: recomprimir so gasta CPU
+    private static final Set<String> PRECOMPRESSED = Set.of(
+            ".zip", ".gz", ".tgz", ".bz2", ".xz", ".zst", ".7z", ".rar", ".jar",
+            ".docx", ".xlsx", ".pptx", ".odt", ".ods", ".odp", ".pdf",
+            ".jpg", ".jpeg", ".png", ".gif", ".webp", ".mp3", ".ogg", ".mp4", ".mkv", ".mov", ".avi");
+
+    private DeflateStreams() {
+    }
+
+    /** Bytes do conteudo, bytes no canal de dados e tempo de CPU do codec em uma transferencia. */
+    public record Report(long rawBytes, long wireBytes, long cpuNanos) {
+        public double ratio() {
+            return wireBytes == 0 ? 1 : (double) rawBytes / wireBytes;
+        }
+
+        public String describe() {
+            return String.format(Locale.ROOT, "%d bytes, %d no canal (%.2fx), CPU %.1f ms",
+                    rawBytes, wireBytes, ratio(), cpuNanos / 1e6);
+        }
+    }
+
+    /**
+     * Nivel para enviar o arquivo: 0 (blocos deflate sem compressao, quase so copia) quando a
+     * extensao indica um formato ja comprimido; o fluxo continua sendo zlib para o outro lado.
+     */
+    public static int levelFor(String filename, int level) {
+        int dot = filename == null ? -1 : filename.lastIndexOf('.');
+        if (dot < 0) return level;
+        return PRECOMPRESSED.contains(filename.substring(dot).toLowerCase(Locale.ROOT)) ? Deflater.NO_COMPRESSION : level;
+    }
+
+    /**
+     * Comprime o que e escrito; {@link #complete()} termina o fluxo zlib sem fechar {@code out}
+     * e {@link #close()} termina e fecha.
+     */
+    public static final class Output extends DeflaterOutputStream {
+        private long cpuNanos;
+        private Report report;
+
+        public Output(OutputStream out, int level) {
+            super(out, new Deflater(level), 64 * 1024);
+        }
+
+        // Mesmo laco do DeflaterOutputStream, medindo so a chamada ao deflate
+        @Override
+        protected void deflate() throws IOException {
+            long start = System.nanoTime();
+            int n = def.deflate(buf, 0, buf.length);
+            cpuNanos += System.nanoTime() - start;
+            if (n > 0) out.write(buf, 0, n);
+        }
+
+        public Report report() {
+            return report != null ? report : new Report(def.getBytesRead(), def.getBytesWritten(), cpuNanos);
+        }
+
+        /** Termina o fluxo zlib e libera o Deflater sem fechar o stream de baixo. */
+        public void complete() throws IOException {
+            if (report != null) return;
+            try {
+                finish();
+                out.flush();
+            } finally {
+                report = report();
+                def.end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                complete();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Descomprime o que e lido. Se o canal terminar antes do fim do fluxo zlib a leitura falha
+     * com {@link java.io.EOFException}: a transferencia foi interrompida, mesmo sem ALLO.
+     */
+    public static final class Input extends InflaterInputStream {
+        private long cpuNanos;
+        private long ioNanos;
+        private Report report;
+
+        public Input(InputStream in) {
+            super(in, new Inflater(), 64 * 1024);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            long io = ioNanos;
+            try {
+                return super.read(b, off, len);
+            } finally {
+                cpuNanos += System.nanoTime() - start - (ioNanos - io);
+            }
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.fill();
+            } finally {
+                ioNanos += System.nanoTime() - start;
+            }
+        }
+
+        public Report report() {
+            return report != null ? report : new Report(inf.getBytesWritten(), inf.getBytesRead(), cpuNanos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (report != null) return;
+            try {
+                super.close();
+            } finally {
+                report = report();
+                inf.end();
+            }
+        }
+    }
+}
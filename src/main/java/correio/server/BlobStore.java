@@ -0,0 +1,185 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Armazenamento enderecado por conteudo: cada conteudo distinto e gravado uma unica vez em
+ * {@code uploads/.blobs/<sha256>}, e o arquivo de cada encomenda ({@code ID_nome.ext}) e um
+ * hard link para o blob. O hash so e conhecido no fim do upload, entao um conteudo repetido
+ * ainda e gravado inteiro uma vez em {@code uploads/.incoming/<id>.part}; quando o hash bate
+ * com um blob existente o parcial e apagado e a encomenda vira mais um link, sem copia
+ * duradoura. O RETR continua operando sobre o arquivo da encomenda como antes.
+ *
+ * A contagem de referencias de cada blob e o numero de links do proprio arquivo menos um (o
+ * nome em .blobs), entao sobrevive a quedas sem registro extra no diario. Na inicializacao os
+ * blobs sem nenhuma encomenda sao apagados. Em sistemas de arquivos sem hard links o
+ * armazenamento fica desligado e cada upload vira um arquivo proprio, como antes.
+ */
+public class BlobStore {
+    public static final String DIR = ".blobs";
+    private static final String ALGORITHM = "SHA-256";
+    // Marca que as encomendas anteriores ao armazenamento ja foram deduplicadas
+    private static final String MIGRATED = ".migrated";
+
+    private final Path blobsDir;
+    private final ConcurrentMap<String, Integer> references = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    public BlobStore(Path uploadsDir) {
+        this.blobsDir = uploadsDir.resolve(DIR);
+        this.enabled = supportsHardLinks(uploadsDir);
+    }
+
+    /** Digest usado para enderecar os blobs; alimentado pelo {@link DataTransfers#receivePart}. */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " indisponivel", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Carrega as contagens de referencia a partir dos links de cada blob, apaga os blobs sem
+     * encomenda e, na primeira execucao, deduplica as encomendas ja existentes.
+     */
+    public void open(Collection<ShipmentInfo> shipments) throws IOException {
+        if (!enabled) {
+            ServerLog.info("Blobs: sistema de arquivos sem hard links; deduplicacao desligada.");
+            return;
+        }
+        Files.createDirectories(blobsDir);
+        if (!Files.exists(blobsDir.resolve(MIGRATED))) {
+            migrate(shipments);
+            Files.createFile(blobsDir.resolve(MIGRATED));
+        }
+
+        long shared = 0;
+        try (Stream<Path> blobs = Files.list(blobsDir)) {
+            for (Path blob : (Iterable<Path>) blobs::iterator) {
+                String hash = blob.getFileName().toString();
+                if (hash.startsWith(".")) continue;
+                int links = linkCount(blob) - 1;
+                if (links <= 0) {
+                    Files.deleteIfExists(blob);
+                    ServerLog.info(" -> Blob sem encomenda descartado: " + hash);
+                    continue;
+                }
+                references.put(hash, links);
+                shared += (links - 1) * Files.size(blob);
+            }
+        }
+        ServerLog.info(String.format("Blobs: %d conteudo(s) distinto(s), %d byte(s) economizados pela deduplicacao.",
+                references.size(), shared));
+    }
+
+    /**
+     * Publica o upload completo {@code part} como {@code target}. Se o conteudo ({@code digest}
+     * calculado durante a recepcao) ja existe, o parcial e descartado e {@code target} passa a
+     * apontar para o blob existente. Sem digest (armazenamento desligado) apenas renomeia.
+     *
+     * @return true se o conteudo era repetido (nenhum dado novo ficou em disco)
+     */
+    public boolean publish(Path part, byte[] digest, Path target) throws IOException {
+        if (!enabled || digest == null) {
+            DataTransfers.publish(part, target);
+            return false;
+        }
+        String hash = HexFormat.of().formatHex(digest);
+        Path blob = blobsDir.resolve(hash);
+        Files.createDirectories(blobsDir);
+        boolean duplicate;
+        try {
+            // createLink falha se o blob ja existe, ao contrario do rename, que o substituiria
+            Files.createLink(blob, part);
+            duplicate = false;
+        } catch (FileAlreadyExistsException e) {
+            duplicate = true;
+        } catch (UnsupportedOperationException e) {
+            enabled = false;
+            ServerLog.warn("Blobs: hard links nao suportados; deduplicacao desligada.");
+            DataTransfers.publish(part, target);
+            return false;
+        }
+        Files.deleteIfExists(target);
+        Files.createLink(target, blob);
+        Files.delete(part);
+        references.merge(hash, 1, Integer::sum);
+        return duplicate;
+    }
+
+    /** Numero de conteudos distintos armazenados. */
+    public int count() {
+        return references.size();
+    }
+
+    /** Numero de encomendas que apontam para o blob, ou 0 se ele nao existe. */
+    public int references(String hash) {
+        return references.getOrDefault(hash, 0);
+    }
+
+    // Encomendas gravadas antes do armazenamento: o primeiro arquivo de cada conteudo vira o
+    // blob e os repetidos sao trocados (rename atomico) por links para ele
+    private void migrate(Collection<ShipmentInfo> shipments) throws IOException {
+        long freed = 0;
+        int linked = 0;
+        for (ShipmentInfo info : shipments) {
+            Path file = info.getFile();
+            if (file == null || !Files.isRegularFile(file)) continue;
+            Path blob = blobsDir.resolve(HexFormat.of().formatHex(hash(file)));
+            try {
+                Files.createLink(blob, file);
+            } catch (FileAlreadyExistsException e) {
+                if (Files.isSameFile(blob, file)) continue;
+                Path link = blobsDir.resolve(".link.tmp");
+                Files.deleteIfExists(link);
+                Files.createLink(link, blob);
+                freed += Files.size(file);
+                Files.move(link, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            linked++;
+        }
+        ServerLog.info(String.format("Blobs: %d encomenda(s) migrada(s), %d byte(s) de copias repetidas liberados.",
+                linked, freed));
+    }
+
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+        return digest.digest();
+    }
+
+    private static int linkCount(Path file) throws IOException {
+        return ((Number) Files.getAttribute(file, "unix:nlink")).intValue();
+    }
+
+    private static boolean supportsHardLinks(Path dir) {
+        try {
+            return Files.getFileStore(dir).supportsFileAttributeView("unix");
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
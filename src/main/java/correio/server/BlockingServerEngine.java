@@ -0,0 +1,93 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motor classico: cada conexao de controle recebe um {@link ClientHandler} bloqueante
+ * executado em uma thread propria do pool. Com {@link ExecutorMode#VIRTUAL} cada sessao
+ * (e as transferencias que ela faz) roda em uma thread virtual.
+ */
+public class BlockingServerEngine implements ServerEngine {
+    private final int port;
+    private final ServerContext context;
+    private final ExecutorMode executorMode;
+    private ServerSocket serverSocket;
+    private ExecutorService pool;
+    private volatile boolean running;
+
+    public BlockingServerEngine(int port, ServerContext context, ExecutorMode executorMode) {
+        this.port = port;
+        this.context = context;
+        this.executorMode = executorMode;
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        pool = executorMode.newExecutor("ftp-session");
+        context.getMetrics().executor("ftp-session", pool);
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "ftp-accept");
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket clientControlSocket = serverSocket.accept();
+                // Sem Nagle: o 226 nao pode esperar o ACK atrasado do 150 (~40 ms por transferencia)
+                clientControlSocket.setTcpNoDelay(true);
+                context.getMetrics().connectionAccepted();
+                ServerLog.info("Nova conexão de controle de: " + clientControlSocket.getInetAddress().getHostAddress());
+                pool.submit(new ClientHandler(clientControlSocket, context));
+            } catch (SocketException e) {
+                if (running) ServerLog.error("Erro no socket de controle: " + e.getMessage());
+                else ServerLog.info("Servidor de controle encerrado.");
+            } catch (IOException e) {
+                if (running) ServerLog.error("Erro ao aceitar conexão de controle", e);
+            }
+        }
+    }
+
+    @Override
+    public int port() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            ServerLog.error("Erro ao fechar o socket do servidor: " + e.getMessage());
+        }
+
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "blocking/" + executorMode.name().toLowerCase();
+    }
+}
@@ -1,228 +1,669 @@
 package correio.server;
 
+import correio.protocol.DeflateStreams;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import correio.server.metrics.ServerMetrics;
+
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.time.format.DateTimeFormatter;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Random;
-import java.util.stream.Stream;
 
 public class ClientHandler implements Runnable {
-	private final Socket controlSocket; // Socket para comandos
+	private final Socket controlSocket; // Socket para comandos (null quando usado pelo motor NIO)
+	private final InetAddress localAddress; // Endereco anunciado na resposta do PASV
+	private final InetAddress remoteAddress; // Origem esperada das conexoes de dados
 	private final Map<String, ShipmentInfo> tracking;
-	private final Path uploadsDir = Paths.get("uploads");
-	private static final Random random = new Random();
+	private final ShipmentJournal journal;
+	private final ShipmentIdAllocator idAllocator;
+	private final ShipmentTimeline timeline;
+	private final PartialUploads partialUploads;
+	private final BlobStore blobStore;
+	private final ServerMetrics metrics;
+	private final Path uploadsDir;
+	static final String WELCOME = "220 Bem-vindo ao Servidor FTP (Java-Based).";
+	// Linha de um ID inexistente no STAT com varios IDs (o STAT de um ID responde 550)
+	private static final String STATUS_NOT_FOUND = ": nao encontrado";
 
 	// Estado para o Modo Passivo
-	private ServerSocket dataServerSocket;
-
-	public ClientHandler(Socket socket, Map<String, ShipmentInfo> tracking) {
+	private final PassivePortPool passivePorts; // null = um listener efemero por PASV
+	private PassiveConnection passiveConnection;
+	// Tamanho anunciado pelo cliente via ALLO para o proximo STOR (-1 = desconhecido)
+	private long allocationHint = -1;
+	// Marcador do REST para o proximo STOR/RETR (-1 = sem REST)
+	private long restartOffset = -1;
+	// Ultimo byte (inclusivo) do intervalo pedido via RANG para o proximo RETR (-1 = ate o fim)
+	private long rangeEnd = -1;
+	// MODE Z: canal de dados comprimido com deflate neste nivel (-1 = MODE S, bytes crus)
+	private int deflateLevel = -1;
+	// Nivel usado pelo proximo MODE Z, ajustavel com OPTS MODE Z LEVEL n
+	private int requestedLevel = DeflateStreams.DEFAULT_LEVEL;
+
+	public ClientHandler(Socket socket, ServerContext context) {
 		this.controlSocket = socket;
-		this.tracking = tracking;
+		this.localAddress = socket.getLocalAddress();
+		this.remoteAddress = socket.getInetAddress();
+		this.tracking = context.getTracking();
+		this.journal = context.getJournal();
+		this.idAllocator = context.getIdAllocator();
+		this.timeline = context.getTimeline();
+		this.partialUploads = context.getPartialUploads();
+		this.blobStore = context.getBlobStore();
+		this.metrics = context.getMetrics();
+		this.uploadsDir = context.getUploadsDir();
+		this.passivePorts = context.getPassivePorts();
 	}
 
-	private String buildPersistentFilename(String id, String originalName, String status) {
-		String baseName = originalName;
-		String extension = "";
-		int dotIndex = originalName.lastIndexOf('.');
-		if (dotIndex > 0) {
-			baseName = originalName.substring(0, dotIndex);
-			extension = originalName.substring(dotIndex);
-		}
-		return String.format("%s_%s_%s%s", id, baseName, status, extension);
+	// Construtor usado pelo NioServerEngine: o canal de controle pertence ao event loop,
+	// e este handler apenas interpreta os comandos e executa as transferencias de dados.
+	public ClientHandler(InetAddress localAddress, InetAddress remoteAddress, ServerContext context) {
+		this.controlSocket = null;
+		this.localAddress = localAddress;
+		this.remoteAddress = remoteAddress;
+		this.tracking = context.getTracking();
+		this.journal = context.getJournal();
+		this.idAllocator = context.getIdAllocator();
+		this.timeline = context.getTimeline();
+		this.partialUploads = context.getPartialUploads();
+		this.blobStore = context.getBlobStore();
+		this.metrics = context.getMetrics();
+		this.uploadsDir = context.getUploadsDir();
+		this.passivePorts = context.getPassivePorts();
+	}
+
+	// Nome fixo desde o upload; o status fica no ShipmentInfo e no diario
+	private String buildPersistentFilename(String id, String originalName) {
+		return id + "_" + originalName;
 	}
 
 	@Override
 	public void run() {
-		try (BufferedReader in = new BufferedReader(new InputStreamReader(controlSocket.getInputStream()));
-			 PrintWriter out = new PrintWriter(controlSocket.getOutputStream(), true)) {
-
-			out.println("220 Bem-vindo ao Servidor FTP (Java-Based).");
-			String line;
-			while ((line = in.readLine()) != null) {
-				System.out.println("[Controle] Comando recebido: " + line);
-				String[] parts = line.split(" ", 2);
-				String cmd = parts[0].toUpperCase();
-				String arg = parts.length > 1 ? parts[1] : null;
-
-				switch (cmd) {
-					case "USER": out.println("331 Usuario OK, precisa de senha."); break;
-					case "PASS": out.println("230 Login do usuario efetuado."); break;
-					case "TYPE": out.println("200 Tipo mudado para I (Binary)."); break;
-					case "PASV": handlePasv(out); break;
-					case "LIST": handleList(out); break;
-					case "STOR": handleStor(arg, out); break; // STOR é o comando FTP para upload (PUT)
-					case "RETR": handleRetr(arg, out); break; // RETR é o comando FTP para download (GET)
-					case "STAT": handleStatus(arg, out); break; // Usando STAT para nosso status customizado
-					case "QUIT":
-						out.println("221 Adeus.");
+		// Antes do try: o finally sempre fecha a sessao, mesmo se abrir os streams falhar
+		metrics.sessionOpened();
+		try (InputStream in = controlSocket.getInputStream();
+			 ControlReplies out = new ControlReplies(controlSocket.getOutputStream(), metrics)) {
+
+			out.println(WELCOME);
+			out.flush();
+			CommandBuffer input = new CommandBuffer();
+			while (input.read(in) >= 0) {
+				while (input.nextLine()) {
+					if (!dispatch(input, out)) {
+						out.flush();
 						controlSocket.close();
 						return;
-					default:
-						out.println("502 Comando não implementado.");
+					}
+					// Comandos enviados de uma vez (pipelining) sao respondidos em uma unica escrita
+					if (!input.hasCompleteLine()) out.flush();
 				}
 			}
 		} catch (IOException e) {
-			if (!e.getMessage().contains("Connection reset")) {
-				e.printStackTrace();
+			if (e.getMessage() == null || !e.getMessage().contains("Connection reset")) {
+				ServerLog.error("[Controle] Erro na sessao", e);
 			}
+		} catch (RuntimeException e) {
+			ServerLog.error("[Controle] Erro inesperado na sessao", e);
 		} finally {
+			metrics.sessionClosed();
 			try {
-				if (dataServerSocket != null && !dataServerSocket.isClosed()) dataServerSocket.close();
+				closeDataChannel();
 				if (controlSocket != null && !controlSocket.isClosed()) controlSocket.close();
 			} catch (IOException e) {
-				e.printStackTrace();
+				ServerLog.warn("[Controle] Erro ao fechar a sessao", e);
 			}
 		}
 	}
 
+	/**
+	 * Executa o comando da linha atual de {@code input} e escreve as respostas em {@code out}
+	 * sem envia-las: o motor faz o flush por comando ou por lote. Retorna {@code false} quando
+	 * a sessao deve ser encerrada (QUIT).
+	 */
+	boolean dispatch(CommandBuffer input, PrintWriter out) throws IOException {
+		Command command = input.command();
+		if (command == null) {
+			out.println("500 Linha de comando muito longa.");
+			return true;
+		}
+		if (ServerLog.isEnabled(LogLevel.DEBUG)) ServerLog.debug("[Controle] Comando recebido: ", input.line());
+		String arg = command.takesArgument ? input.argument() : null;
+		long start = System.nanoTime();
+		try {
+			return execute(command, arg, out);
+		} finally {
+			metrics.command(command.name(), System.nanoTime() - start);
+		}
+	}
+
+	private boolean execute(Command command, String arg, PrintWriter out) throws IOException {
+		switch (command) {
+			case USER: out.println("331 Usuario OK, precisa de senha."); break;
+			case PASS: out.println("230 Login do usuario efetuado."); break;
+			case TYPE: out.println("200 Tipo mudado para I (Binary)."); break;
+			case ALLO: handleAllo(arg, out); break;
+			case MODE: handleMode(arg, out); break;
+			case OPTS: handleOpts(arg, out); break;
+			case REST: handleRest(arg, out); break;
+			case RANG: handleRange(arg, out); break;
+			case SIZE: handleSize(arg, out); break;
+			case PASV: handlePasv(out); break;
+			case LIST: handleList(arg, out); break;
+			case STOR: handleStor(arg, out); break; // STOR é o comando FTP para upload (PUT)
+			case RETR: handleRetr(arg, out); break; // RETR é o comando FTP para download (GET)
+			case STAT: handleStatus(arg, out); break; // Usando STAT para nosso status customizado
+			case SITE: handleSite(arg, out); break;
+			case QUIT:
+				out.println("221 Adeus.");
+				return false;
+			default:
+				out.println("502 Comando não implementado.");
+		}
+		return true;
+	}
+
+	void closeDataChannel() throws IOException {
+		if (passiveConnection != null) {
+			passiveConnection.close();
+			passiveConnection = null;
+		}
+	}
+
+	// Aguarda o cliente conectar no canal de dados anunciado pelo ultimo PASV
+	private Socket acceptDataConnection() throws IOException {
+		if (passiveConnection == null) {
+			metrics.pasvFailure();
+			throw new IOException("Nenhum PASV pendente para esta transferencia.");
+		}
+		try {
+			return passiveConnection.accept();
+		} catch (IOException e) {
+			metrics.pasvFailure();
+			throw e;
+		}
+	}
+
 	private void handlePasv(PrintWriter out) throws IOException {
-		// Fecha qualquer socket de dados anterior
-		if (dataServerSocket != null && !dataServerSocket.isClosed()) {
-			dataServerSocket.close();
+		// Libera qualquer canal de dados anterior
+		closeDataChannel();
+		if (passivePorts != null) {
+			// Apenas reserva uma porta do pool; os listeners ja estao abertos
+			try {
+				passiveConnection = passivePorts.reserve(remoteAddress);
+			} catch (IOException e) {
+				ServerLog.warn("[Dados] " + e.getMessage());
+				metrics.pasvFailure();
+				out.println("425 Nenhuma porta passiva disponivel no momento.");
+				return;
+			}
+			if (ServerLog.isEnabled(LogLevel.DEBUG)) {
+				ServerLog.debug("[Dados] Modo passivo. Porta reservada: " + passiveConnection.port()
+						+ " (" + passivePorts.portsInUse() + "/" + passivePorts.size() + " portas em uso)");
+			}
+		} else {
+			passiveConnection = PassiveConnection.openEphemeral();
+			if (ServerLog.isEnabled(LogLevel.DEBUG)) ServerLog.debug("[Dados] Modo passivo. Escutando na porta: ", passiveConnection.port());
 		}
-		// Abre um novo ServerSocket em uma porta aleatória
-		dataServerSocket = new ServerSocket(0); // 0 = porta aleatória livre
-		int dataPort = dataServerSocket.getLocalPort();
-		System.out.println("[Dados] Modo passivo. Escutando na porta: " + dataPort);
+		int dataPort = passiveConnection.port();
 
 		// Prepara a resposta para o comando PASV
-		byte[] ip = controlSocket.getLocalAddress().getAddress();
+		byte[] ip = localAddress.getAddress();
 		String ipStr = String.format("%d,%d,%d,%d", ip[0] & 0xFF, ip[1] & 0xFF, ip[2] & 0xFF, ip[3] & 0xFF);
 		String portStr = String.format("%d,%d", dataPort / 256, dataPort % 256);
 
 		out.println("227 Entrando em Modo Passivo (" + ipStr + "," + portStr + ").");
 	}
 
-	// handleStor (Store)
-	private void handleStor(String filename, PrintWriter controlOut) throws IOException {
-		controlOut.println("150 Ok para enviar dados.");
+	private void handleAllo(String arg, PrintWriter out) {
+		try {
+			allocationHint = Long.parseLong(arg == null ? "" : arg.trim());
+			if (allocationHint < 0) throw new NumberFormatException();
+			out.println("200 ALLO ok, " + allocationHint + " bytes reservados para o proximo STOR.");
+		} catch (NumberFormatException e) {
+			allocationHint = -1;
+			out.println("501 Tamanho invalido para ALLO.");
+		}
+	}
+
+	// MODE S (padrao) ou MODE Z: transferencias seguintes com deflate; offsets continuam em bytes do arquivo
+	private void handleMode(String arg, PrintWriter out) {
+		String mode = arg == null ? "" : arg.trim().toUpperCase();
+		if (mode.equals("S")) {
+			deflateLevel = -1;
+			out.println("200 Modo mudado para S (Stream).");
+		} else if (mode.equals("Z")) {
+			deflateLevel = requestedLevel;
+			out.println("200 Modo mudado para Z (deflate, nivel " + deflateLevel + ").");
+		} else {
+			out.println("504 Modo nao suportado: " + mode);
+		}
+	}
+
+	// OPTS MODE Z LEVEL <0-9>: nivel do deflate nos envios do servidor (RETR e LIST)
+	private void handleOpts(String arg, PrintWriter out) {
+		String[] tokens = arg == null ? new String[0] : arg.trim().toUpperCase().split("\\s+");
+		if (tokens.length != 4 || !tokens[0].equals("MODE") || !tokens[1].equals("Z") || !tokens[2].equals("LEVEL")) {
+			out.println("501 Opcao nao suportada.");
+			return;
+		}
+		try {
+			int level = Integer.parseInt(tokens[3]);
+			if (level < 0 || level > 9) throw new NumberFormatException();
+			requestedLevel = level;
+			if (deflateLevel >= 0) deflateLevel = level;
+			out.println("200 Nivel do MODE Z: " + level + ".");
+		} catch (NumberFormatException e) {
+			out.println("501 Nivel invalido para MODE Z (0-9).");
+		}
+	}
+
+	private void handleRest(String arg, PrintWriter out) {
+		try {
+			restartOffset = Long.parseLong(arg == null ? "" : arg.trim());
+			if (restartOffset < 0) throw new NumberFormatException();
+			rangeEnd = -1;
+			out.println("350 Reiniciando no byte " + restartOffset + ". Envie STOR ou RETR.");
+		} catch (NumberFormatException e) {
+			restartOffset = -1;
+			out.println("501 Offset invalido para REST.");
+		}
+	}
+
+	// RANG <inicio> <fim>: o proximo RETR envia so os bytes inicio..fim (inclusivo), sem marcar entrega
+	private void handleRange(String arg, PrintWriter out) {
+		String[] bounds = arg == null ? new String[0] : arg.trim().split("\\s+");
+		try {
+			if (bounds.length != 2) throw new NumberFormatException();
+			long start = Long.parseLong(bounds[0]);
+			long end = Long.parseLong(bounds[1]);
+			if (start < 0 || end < start) throw new NumberFormatException();
+			restartOffset = start;
+			rangeEnd = end;
+			out.println("350 Intervalo " + start + "-" + end + " definido para o proximo RETR.");
+		} catch (NumberFormatException e) {
+			restartOffset = -1;
+			rangeEnd = -1;
+			out.println("501 Intervalo invalido para RANG.");
+		}
+	}
 
-		try (Socket dataConnection = dataServerSocket.accept(); // Aguarda o cliente conectar no canal de dados
-			 InputStream dataIn = dataConnection.getInputStream()) {
+	// SIZE <id>: tamanho da encomenda ou, para um upload interrompido, quantos bytes ja chegaram
+	private void handleSize(String shipmentId, PrintWriter out) throws IOException {
+		if (shipmentId == null || shipmentId.isBlank()) {
+			out.println("501 Informe o ID para SIZE.");
+			return;
+		}
+		ShipmentInfo info = tracking.get(shipmentId);
+		if (info != null && info.getFile() != null && Files.isRegularFile(info.getFile())) {
+			out.println("213 " + Files.size(info.getFile()));
+			return;
+		}
+		long received = partialUploads.size(shipmentId);
+		out.println(received >= 0 ? "213 " + received : "550 ID nao encontrado.");
+	}
 
-			String shipmentId;
+	// handleStor (Store). Com REST antes, o argumento e o ID de um upload interrompido a retomar.
+	private void handleStor(String arg, PrintWriter controlOut) throws IOException {
+		long offset = restartOffset;
+		boolean ranged = rangeEnd >= 0;
+		restartOffset = -1;
+		rangeEnd = -1;
+		if (ranged) {
+			controlOut.println("504 RANG so e aceito antes de RETR.");
+			allocationHint = -1;
+			closeDataChannel();
+			return;
+		}
+		// Validado antes de reservar um ID ou esperar pela conexao de dados
+		if (arg == null || arg.isBlank()) {
+			controlOut.println(offset >= 0 ? "501 Informe o ID para retomar o STOR." : "501 Informe o nome do arquivo para STOR.");
+			allocationHint = -1;
+			closeDataChannel();
+			return;
+		}
+		if (offset < 0 && !isValidFilename(arg)) {
+			controlOut.println("553 Nome de arquivo invalido: " + arg);
+			allocationHint = -1;
+			closeDataChannel();
+			return;
+		}
+		String shipmentId;
+		String filename;
+		if (offset >= 0) {
+			PartialUploads.Entry entry = partialUploads.claim(arg);
+			if (entry == null) {
+				controlOut.println("550 Nenhum upload interrompido com o ID: " + arg);
+				allocationHint = -1;
+				closeDataChannel();
+				return;
+			}
+			long received = partialUploads.partFile(entry.id()).toFile().length();
+			if (offset > received) {
+				partialUploads.keep(entry.id(), entry.filename());
+				controlOut.println("554 REST " + offset + " alem dos " + received + " bytes ja recebidos.");
+				allocationHint = -1;
+				closeDataChannel();
+				return;
+			}
+			shipmentId = entry.id();
+			filename = entry.filename();
+		} else {
 			do {
-				shipmentId = String.format("%04d", random.nextInt(10000));
-			} while (tracking.containsKey(shipmentId));
+				shipmentId = idAllocator.nextId();
+			} while (tracking.containsKey(shipmentId)); // so repete se um ID antigo fugir do formato do alocador
+			filename = arg;
+			offset = 0;
+		}
 
-			String persistentFilename = buildPersistentFilename(shipmentId, filename, "ENVIADA");
-			Path filePath = uploadsDir.resolve(persistentFilename);
+		// O ID reservado ja vai no 150: se a conexao cair, o cliente sabe qual upload retomar
+		controlOut.println("150 Ok para enviar dados. ID reservado: " + shipmentId);
+		controlOut.flush(); // o 150 sai antes de esperar pela conexao de dados
+
+		// Recebe em um arquivo parcial (pre-alocado se houve ALLO) e so entao publica com o
+		// nome final: uploads abortados nao aparecem como encomendas. O hash calculado durante a
+		// recepcao endereca o conteudo no BlobStore, que guarda cada conteudo uma unica vez.
+		Path part = partialUploads.partFile(shipmentId);
+		MessageDigest digest = blobStore.isEnabled() ? BlobStore.newDigest() : null;
+		long transferStart = System.nanoTime();
+		try (Socket dataConnection = acceptDataConnection()) { // Aguarda o cliente conectar no canal de dados
+
+			long size;
+			if (deflateLevel >= 0) {
+				try (DeflateStreams.Input in = new DeflateStreams.Input(dataConnection.getInputStream())) {
+					size = DataTransfers.receivePart(in, part, offset, allocationHint, digest);
+					ServerLog.info("[Dados] MODE Z STOR " + shipmentId + ": " + in.report().describe());
+					metrics.transferIn("STOR", in.report().wireBytes(), System.nanoTime() - transferStart);
+				}
+			} else {
+				size = DataTransfers.receivePart(dataConnection, part, offset, allocationHint, digest);
+				metrics.transferIn("STOR", size - offset, System.nanoTime() - transferStart);
+			}
+			if (allocationHint >= 0 && size < allocationHint) {
+				// Com ALLO, menos bytes que o anunciado significa conexao interrompida, nao fim do arquivo
+				throw new EOFException("Recebidos " + size + " de " + allocationHint + " bytes anunciados no ALLO");
+			}
 
-			// Transfere os bytes brutos, sem Base64
-			Files.copy(dataIn, filePath, StandardCopyOption.REPLACE_EXISTING);
+			Path filePath = uploadsDir.resolve(buildPersistentFilename(shipmentId, filename));
+			boolean duplicate = blobStore.publish(part, digest == null ? null : digest.digest(), filePath);
 
-			ShipmentInfo info = new ShipmentInfo(shipmentId, filename);
+			ShipmentInfo info = new ShipmentInfo(shipmentId, filename, filePath);
 			tracking.put(shipmentId, info);
-			System.out.println("[Dados] Arquivo " + filename + " recebido com sucesso. ID: " + shipmentId);
+			timeline.add(info);
+			journal.recordCreated(info);
+			ServerLog.info("[Dados] Arquivo " + filename + " recebido com sucesso. ID: " + shipmentId
+					+ (offset > 0 ? " (retomado no byte " + offset + ")" : "")
+					+ (duplicate ? " (conteudo repetido, sem nova copia em disco)" : ""));
 			controlOut.println("226 Transferencia concluida. ID de rastreio: " + shipmentId);
 
 		} catch (IOException e) {
-			controlOut.println("426 Conexao fechada; transferencia abortada.");
-			e.printStackTrace();
-		} finally {
-			if (dataServerSocket != null && !dataServerSocket.isClosed()) {
-				dataServerSocket.close();
+			if (Files.exists(part)) {
+				partialUploads.keep(shipmentId, filename);
+				controlOut.println("426 Conexao fechada; transferencia abortada. Retome com REST e STOR " + shipmentId + ".");
+			} else {
+				controlOut.println("426 Conexao fechada; transferencia abortada.");
 			}
+			ServerLog.error("[Dados] Falha no recebimento de arquivo", e);
+		} finally {
+			allocationHint = -1;
+			closeDataChannel();
+		}
+	}
+
+	// O nome vira parte do arquivo em uploads/: nada de separadores nem nomes que o sistema de arquivos recusa
+	private boolean isValidFilename(String name) {
+		if (name.equals(".") || name.equals("..") || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) return false;
+		try {
+			uploadsDir.resolve(name);
+			return true;
+		} catch (InvalidPathException e) {
+			return false;
 		}
 	}
 
 	// handleRetr (Retrieve)
 	private void handleRetr(String shipmentId, PrintWriter controlOut) throws IOException {
+		long offset = Math.max(restartOffset, 0);
+		long end = rangeEnd;
+		restartOffset = -1;
+		rangeEnd = -1;
+		if (shipmentId == null || shipmentId.isBlank()) {
+			controlOut.println("501 Informe o ID para RETR.");
+			return;
+		}
 		ShipmentInfo info = tracking.get(shipmentId);
 		if (info == null) {
 			controlOut.println("550 ID nao encontrado.");
 			return;
 		}
 
-		Path filePath = findFileById(shipmentId);
-		if (filePath == null) {
+		// Consulta O(1) no indice em memoria; apenas confirma que o arquivo ainda existe
+		Path filePath = info.getFile();
+		if (filePath == null || !Files.isRegularFile(filePath)) {
 			controlOut.println("550 Arquivo fisico nao encontrado para o ID: " + shipmentId);
 			return;
 		}
 
-		controlOut.println("150 Abrindo conexao de dados em modo BINARY.");
-
-		try (Socket dataConnection = dataServerSocket.accept();
-			 OutputStream dataOut = dataConnection.getOutputStream()) {
+		long size = Files.size(filePath);
+		if (offset > size) {
+			controlOut.println("554 REST " + offset + " alem do tamanho do arquivo (" + size + " bytes).");
+			closeDataChannel();
+			return;
+		}
 
-			// Envia os bytes brutos do arquivo
-			Files.copy(filePath, dataOut);
-			dataOut.flush();
+		if (end >= 0) {
+			controlOut.println("150 Abrindo conexao de dados em modo BINARY para os bytes " + offset + "-" + Math.min(end, size - 1) + ".");
+		} else if (offset > 0) {
+			controlOut.println("150 Abrindo conexao de dados em modo BINARY a partir do byte " + offset + ".");
+		} else {
+			controlOut.println("150 Abrindo conexao de dados em modo BINARY.");
+		}
+		controlOut.flush();
+
+		long transferStart = System.nanoTime();
+		try (Socket dataConnection = acceptDataConnection()) {
+
+			long length = end >= 0 ? end - offset + 1 : Long.MAX_VALUE;
+			long sent;
+			if (deflateLevel >= 0) {
+				// MODE Z: formatos ja comprimidos vao em blocos deflate sem compressao
+				DeflateStreams.Report report = DataTransfers.sendDeflated(filePath, dataConnection, offset, length,
+						DeflateStreams.levelFor(info.getFilename(), deflateLevel));
+				ServerLog.info("[Dados] MODE Z RETR " + shipmentId + ": " + report.describe());
+				sent = report.wireBytes();
+			} else if (end >= 0) {
+				// Envia os bytes do arquivo direto do page cache para o socket (sendfile)
+				sent = DataTransfers.sendRange(filePath, dataConnection, offset, length);
+			} else {
+				sent = DataTransfers.sendFile(filePath, dataConnection, offset);
+			}
+			metrics.transferOut("RETR", sent, System.nanoTime() - transferStart);
+			if (end >= 0) {
+				if (ServerLog.isEnabled(LogLevel.DEBUG)) {
+					ServerLog.debug("[Dados] Intervalo " + offset + "-" + end + " do ID " + shipmentId + " enviado.");
+				}
+				controlOut.println("226 Transferencia de dados concluida.");
+				return; // um segmento nao e a entrega; o cliente confirma com um RETR final
+			}
 
-			System.out.println("[Dados] Arquivo ID " + shipmentId + " enviado com sucesso.");
+			ServerLog.info("[Dados] Arquivo ID " + shipmentId + " enviado com sucesso.");
 			controlOut.println("226 Transferencia de dados concluida.");
 
-			// Atualiza status se necessário
-			if (!info.getStatus().equals("ENTREGUE")) {
-				Path newFilePath = uploadsDir.resolve(buildPersistentFilename(info.getId(), info.getFilename(), "ENTREGUE"));
-				Files.move(filePath, newFilePath, StandardCopyOption.REPLACE_EXISTING);
-				info.setStatus("ENTREGUE");
+			// Atualiza status se necessário: so o RETR que vence o CAS mexe no indice e no diario,
+			// e o arquivo nao e renomeado (downloads simultaneos continuam lendo o mesmo Path)
+			if (info.compareAndSetStatus(ShipmentStatus.ENVIADA, ShipmentStatus.ENTREGUE)) {
+				timeline.statusChanged(info, ShipmentStatus.ENVIADA);
+				journal.recordUpdated(info);
 			}
 
 		} catch (IOException e) {
 			controlOut.println("426 Conexao fechada; transferencia abortada.");
-			e.printStackTrace();
+			ServerLog.error("[Dados] Falha no envio de arquivo", e);
 		} finally {
-			if (dataServerSocket != null && !dataServerSocket.isClosed()) {
-				dataServerSocket.close();
-			}
+			closeDataChannel();
 		}
 	}
 
-	private void handleList(PrintWriter controlOut) throws IOException {
-		controlOut.println("150 Aqui vem a listagem de arquivos.");
-
-		try (Socket dataConnection = dataServerSocket.accept();
-			 PrintWriter dataOut = new PrintWriter(dataConnection.getOutputStream(), true)) {
+	/**
+	 * LIST [limit=N] [cursor=C] [since=AAAA-MM-DDTHH:MM:SS] [status=ENVIADA|ENTREGUE]
+	 * Lista da mais nova para a mais antiga lendo direto do indice temporal; sem argumentos
+	 * envia tudo, como antes. Quando a pagina enche, o 226 informa o cursor da proxima.
+	 */
+	private void handleList(String arg, PrintWriter controlOut) throws IOException {
+		restartOffset = -1;
+		rangeEnd = -1;
+		int limit = Integer.MAX_VALUE;
+		ShipmentTimeline.Key cursor = null;
+		LocalDateTime since = null;
+		ShipmentStatus status = null;
+		try {
+			for (String token : arg == null ? new String[0] : arg.trim().split("\\s+")) {
+				int eq = token.indexOf('=');
+				if (eq < 0) continue; // argumentos de caminho ("LIST -la", "LIST /") sao ignorados
+				String key = token.substring(0, eq).toLowerCase();
+				String value = token.substring(eq + 1);
+				switch (key) {
+					case "limit": limit = Integer.parseInt(value); break;
+					case "cursor": cursor = ShipmentTimeline.Key.parse(value); break;
+					case "since": since = LocalDateTime.parse(value); break;
+					case "status":
+						status = ShipmentStatus.find(value);
+						if (status == null) throw new IllegalArgumentException("Status desconhecido: " + value);
+						break;
+					default: throw new IllegalArgumentException("Parametro desconhecido: " + key);
+				}
+			}
+			if (limit <= 0) throw new IllegalArgumentException("limit deve ser positivo");
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			controlOut.println("501 Argumentos invalidos para LIST: " + e.getMessage());
+			closeDataChannel();
+			return;
+		}
 
+		controlOut.println("150 Aqui vem a listagem de arquivos.");
+		controlOut.flush();
+
+		long transferStart = System.nanoTime();
+		try (Socket dataConnection = acceptDataConnection()) {
+			DeflateStreams.Output deflated = deflateLevel >= 0 ? new DeflateStreams.Output(dataConnection.getOutputStream(), deflateLevel) : null;
+			// O cliente le a listagem em UTF-8
+			Writer dataOut = new BufferedWriter(new OutputStreamWriter(
+					deflated != null ? deflated : dataConnection.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+
+			ShipmentTimeline.Key last = null;
+			boolean hasMore = false;
+			int sent = 0;
+			long bytes = 0; // bytes UTF-8 no MODE S (nomes com acento ocupam mais de um byte)
 			if (tracking.isEmpty()) {
-				dataOut.println("Nenhuma encomenda registrada.");
+				String empty = "Nenhuma encomenda registrada." + System.lineSeparator();
+				dataOut.write(empty);
+				bytes = empty.length();
+			} else {
+				StringBuilder row = new StringBuilder(96);
+				Iterator<Map.Entry<ShipmentTimeline.Key, ShipmentInfo>> page = timeline.page(status, cursor, since).iterator();
+				while (sent < limit && page.hasNext()) {
+					Map.Entry<ShipmentTimeline.Key, ShipmentInfo> entry = page.next();
+					formatListRow(entry.getValue(), row);
+					dataOut.append(row);
+					bytes += utf8Length(row);
+					last = entry.getKey();
+					sent++;
+				}
+				// So ha proxima pagina se sobrou alguma entrada depois do limite
+				hasMore = page.hasNext();
+			}
+			dataOut.close(); // no MODE Z tambem termina o fluxo zlib
+			metrics.transferOut("LIST", deflated != null ? deflated.report().wireBytes() : bytes, System.nanoTime() - transferStart);
+			ServerLog.info("[Dados] Listagem enviada ao cliente (" + sent + " linha(s))."
+					+ (deflated != null ? " MODE Z: " + deflated.report().describe() : ""));
+			if (hasMore && last != null) {
+				controlOut.println("226 Listagem de diretorio enviada. Proximo cursor: " + last);
 			} else {
-				tracking.values().stream()
-						.sorted((i1, i2) -> i2.getTimestamp().compareTo(i1.getTimestamp()))
-						.forEach(info -> dataOut.println(
-								String.format("%s | %-30s | %-10s | %s",
-										info.getId(),
-										info.getFilename(),
-										info.getStatus(),
-										info.getTimestamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-								)
-						));
-			}
-			System.out.println("[Dados] Listagem enviada ao cliente.");
-			controlOut.println("226 Listagem de diretorio enviada.");
+				controlOut.println("226 Listagem de diretorio enviada.");
+			}
 
 		} catch (IOException e) {
 			controlOut.println("425 Nao foi possivel abrir a conexao de dados.");
-			e.printStackTrace();
+			ServerLog.error("[Dados] Falha na listagem", e);
 		} finally {
-			if (dataServerSocket != null && !dataServerSocket.isClosed()) {
-				dataServerSocket.close();
-			}
+			closeDataChannel();
 		}
 	}
 
-	private void handleStatus(String shipmentId, PrintWriter out) {
-		ShipmentInfo info = tracking.get(shipmentId);
-		if (info == null) {
-			out.println("550 ID nao encontrado");
-		} else {
-			// No FTP, a resposta a STAT deve ser multiline
-			out.println("211-Status do sistema ou resposta de ajuda:");
-			out.println("  " + info.toString());
-			out.println("211 Fim do status");
+	// Mesmo layout de "%s | %-30s | %-10s | %s", montado sem String.format
+	private static void formatListRow(ShipmentInfo info, StringBuilder row) {
+		row.setLength(0);
+		row.append(info.getId()).append(" | ");
+		appendPadded(row, info.getFilename(), 30).append(" | ");
+		appendPadded(row, info.getStatus().name(), 10).append(" | ");
+		info.appendTimestamp(row);
+		row.append(System.lineSeparator());
+	}
+
+	private static StringBuilder appendPadded(StringBuilder row, String value, int width) {
+		row.append(value);
+		for (int i = value.length(); i < width; i++) row.append(' ');
+		return row;
+	}
+
+	// Tamanho da linha em UTF-8 sem codificar de novo (pares substitutos valem 4 bytes)
+	private static int utf8Length(CharSequence text) {
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) length++;
+			else if (c < 0x800) length += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else length += 3;
+		}
+		return length;
+	}
+
+	private void handleStatus(String arg, PrintWriter out) {
+		String ids = arg == null ? "" : arg.trim();
+		if (ids.isEmpty()) {
+			out.println("501 Informe o ID para STAT.");
+			return;
 		}
+		if (ids.indexOf(' ') < 0) {
+			ShipmentInfo info = tracking.get(ids);
+			if (info == null) {
+				out.println("550 ID nao encontrado");
+			} else {
+				// No FTP, a resposta a STAT deve ser multiline
+				out.println("211-Status do sistema ou resposta de ajuda:");
+				out.println("  " + info.toString());
+				out.println("211 Fim do status");
+			}
+			return;
+		}
+		// Varios IDs: uma linha por ID, na ordem pedida, em uma unica resposta
+		String[] batch = ids.split(" +");
+		out.println("211-Status de " + batch.length + " encomenda(s):");
+		for (String id : batch) {
+			ShipmentInfo info = tracking.get(id);
+			out.println(info == null ? "  " + id + STATUS_NOT_FOUND : "  " + info.toString());
+		}
+		out.println("211 Fim do status");
 	}
 
-	private Path findFileById(String shipmentId) throws IOException {
-		try (Stream<Path> stream = Files.list(uploadsDir)) {
-			return stream
-					.filter(p -> p.getFileName().toString().startsWith(shipmentId + "_"))
-					.findFirst()
-					.orElse(null);
+	// SITE METRICS: as mesmas metricas do endpoint HTTP, no formato do Prometheus, em uma resposta multiline
+	private void handleSite(String arg, PrintWriter out) {
+		if (arg == null || !arg.trim().equalsIgnoreCase("METRICS")) {
+			out.println("501 Comando SITE nao suportado. Use SITE METRICS.");
+			return;
+		}
+		out.println("211-Metricas do servidor (formato Prometheus):");
+		for (String metric : metrics.toPrometheus().split("\n")) {
+			out.println("  " + metric);
 		}
+		out.println("211 Fim das metricas");
 	}
-}
\ No newline at end of file
+}
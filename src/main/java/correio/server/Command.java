@@ -0,0 +1,58 @@
+package correio.server;
+
+/**
+ * Verbos do canal de controle. {@link #parse} le o verbo direto dos bytes da linha, sem criar
+ * String: os quatro caracteres ASCII (ja em maiusculas) viram um int comparado com o de cada verbo.
+ */
+enum Command {
+    USER(false, false),
+    PASS(false, false),
+    TYPE(false, false),
+    ALLO(true, false),
+    MODE(true, false),
+    OPTS(true, false),
+    REST(true, false),
+    RANG(true, false),
+    SIZE(true, true),
+    PASV(false, true),
+    LIST(true, true),
+    STOR(true, true),
+    RETR(true, true),
+    STAT(true, false),
+    SITE(true, false),
+    QUIT(false, false),
+    /** Qualquer outro verbo: respondido com 502. */
+    UNKNOWN(false, false);
+
+    private static final Command[] VERBS = values();
+
+    private final int code;
+    // O argumento so vira String quando o comando o usa
+    final boolean takesArgument;
+    // Aguarda a conexao de dados ou faz I/O de disco: o motor NIO executa fora do event loop
+    final boolean blocking;
+
+    Command(boolean takesArgument, boolean blocking) {
+        this.code = name().length() == 4 ? pack(name().charAt(0), name().charAt(1), name().charAt(2), name().charAt(3)) : -1;
+        this.takesArgument = takesArgument;
+        this.blocking = blocking;
+    }
+
+    /** Verbo da linha {@code line[from, to)}, sem diferenciar maiusculas; o verbo termina no primeiro espaco. */
+    static Command parse(byte[] line, int from, int to) {
+        if (to - from < 4 || (to - from > 4 && line[from + 4] != ' ')) return UNKNOWN;
+        int code = pack(line[from], line[from + 1], line[from + 2], line[from + 3]);
+        for (Command command : VERBS) {
+            if (command.code == code) return command;
+        }
+        return UNKNOWN;
+    }
+
+    private static int pack(int a, int b, int c, int d) {
+        return upper(a) << 24 | upper(b) << 16 | upper(c) << 8 | upper(d);
+    }
+
+    private static int upper(int c) {
+        return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c & 0xFF;
+    }
+}
@@ -0,0 +1,117 @@
+package correio.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffer de leitura do canal de controle, reaproveitado durante toda a sessao. As linhas sao
+ * separadas e o verbo e interpretado direto nos bytes ({@link Command#parse}); so o argumento
+ * vira String, e apenas para comandos que o usam. Varios comandos recebidos de uma vez
+ * (pipelining) ficam no buffer e sao consumidos um a um por {@link #nextLine}.
+ *
+ * Usado pelos dois motores: o bloqueante le de um {@link InputStream}, o NIO de um canal.
+ */
+final class CommandBuffer {
+    static final int MAX_LINE = 8192;
+
+    private final byte[] bytes = new byte[MAX_LINE];
+    private final ByteBuffer channelView = ByteBuffer.wrap(bytes);
+    private int start;   // primeiro byte ainda nao consumido
+    private int end;     // fim dos bytes recebidos
+    private int scanned; // ate onde ja se procurou o fim da linha
+    private boolean discarding; // no meio de uma linha longa demais
+    private int lineStart;
+    private int lineEnd;
+    private Command command;
+
+    /** Le o que estiver disponivel no stream; -1 no fim da conexao. */
+    int read(InputStream in) throws IOException {
+        compact();
+        int n = in.read(bytes, end, bytes.length - end);
+        if (n > 0) end += n;
+        return n;
+    }
+
+    /** Le o que estiver disponivel no canal (nao bloqueante no motor NIO); -1 no fim da conexao. */
+    int read(ReadableByteChannel channel) throws IOException {
+        compact();
+        channelView.limit(bytes.length).position(end);
+        int n = channel.read(channelView);
+        if (n > 0) end += n;
+        return n;
+    }
+
+    /**
+     * Avanca para a proxima linha completa ja recebida; {@code false} se e preciso ler mais.
+     * Uma linha maior que o buffer e descartada e aparece uma unica vez, com {@link #command()} null.
+     */
+    boolean nextLine() {
+        while (true) {
+            int newline = indexOfNewline();
+            if (newline < 0) {
+                scanned = end;
+                if (end - start < bytes.length) return false;
+                start = end = scanned = 0;
+                if (discarding) return false;
+                discarding = true;
+                command = null;
+                lineStart = lineEnd = 0;
+                return true;
+            }
+            int from = start;
+            start = scanned = newline + 1;
+            if (discarding) {
+                discarding = false; // fim da linha longa demais
+                continue;
+            }
+            lineStart = from;
+            lineEnd = newline > from && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+            command = Command.parse(bytes, lineStart, lineEnd);
+            return true;
+        }
+    }
+
+    /** Indica se o proximo comando ja chegou inteiro (o cliente enviou varios de uma vez). */
+    boolean hasCompleteLine() {
+        for (int i = scanned; i < end; i++) {
+            if (bytes[i] == '\n') return true;
+        }
+        return false;
+    }
+
+    /** Verbo da linha atual, ou null se ela foi descartada por ser longa demais. */
+    Command command() {
+        return command;
+    }
+
+    /** Texto apos o primeiro espaco, como no {@code split(" ", 2)} original; null sem espaco. */
+    String argument() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (bytes[i] == ' ') return new String(bytes, i + 1, lineEnd - i - 1, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /** Linha atual inteira; so para o log em DEBUG. */
+    String line() {
+        return new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private int indexOfNewline() {
+        for (int i = scanned; i < end; i++) {
+            if (bytes[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void compact() {
+        if (start == 0) return;
+        System.arraycopy(bytes, start, bytes, 0, end - start);
+        end -= start;
+        scanned -= start;
+        start = 0;
+    }
+}
@@ -0,0 +1,126 @@
+package correio.server;
+
+import correio.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Respostas do canal de controle. Cada linha e codificada em UTF-8 direto em um buffer de bytes
+ * reaproveitado, e nada vai para a rede ate {@link #flush}: o motor chama uma vez por comando
+ * (ou por lote, quando o cliente envia varios comandos de uma vez) e os handlers antes de
+ * esperar pela conexao de dados, para o cliente receber o 150. Um {@code write} por lote em
+ * vez de um por linha, como fazia o {@link PrintWriter} com autoflush.
+ *
+ * Tambem conta os codigos de resposta finais ({@code "NNN "}) nas metricas; linhas de
+ * respostas multiline ({@code "NNN-"} e continuacoes) nao contam. Usado por uma sessao de cada vez.
+ */
+final class ControlReplies extends PrintWriter {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    // Respostas longas (SITE METRICS) sao enviadas aos pedacos em vez de crescer o buffer sem limite
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final OutputStream sink;
+    private final ServerMetrics metrics;
+    private byte[] buffer = new byte[1024];
+    private int count;
+
+    ControlReplies(OutputStream sink, ServerMetrics metrics) {
+        super(Writer.nullWriter());
+        this.sink = sink;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void println(String reply) {
+        if (reply.length() >= 4 && reply.charAt(3) == ' ' && isDigit(reply.charAt(0))
+                && isDigit(reply.charAt(1)) && isDigit(reply.charAt(2))) {
+            metrics.reply((reply.charAt(0) - '0') * 100 + (reply.charAt(1) - '0') * 10 + (reply.charAt(2) - '0'));
+        }
+        write(reply, 0, reply.length());
+        println();
+        if (count >= FLUSH_THRESHOLD) flush();
+    }
+
+    @Override
+    public void println() {
+        ensureCapacity(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, count, LINE_SEPARATOR.length);
+        count += LINE_SEPARATOR.length;
+    }
+
+    @Override
+    public void write(String text, int off, int len) {
+        ensureCapacity(len * 3);
+        for (int i = off; i < off + len; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | c >> 6);
+                buffer[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < off + len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | cp >> 18);
+                buffer[count++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buffer[count++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buffer[count++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buffer[count++] = '?'; // surrogate sem par, como o encoder padrao
+            } else {
+                buffer[count++] = (byte) (0xE0 | c >> 12);
+                buffer[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) {
+        write(new String(chars, off, len), 0, len);
+    }
+
+    @Override
+    public void write(int c) {
+        write(String.valueOf((char) c), 0, 1);
+    }
+
+    /** Envia as respostas acumuladas em uma unica escrita. Erros de I/O ficam em {@link #checkError}. */
+    @Override
+    public void flush() {
+        if (count == 0) return;
+        try {
+            sink.write(buffer, 0, count);
+            sink.flush();
+        } catch (IOException e) {
+            setError();
+        } finally {
+            count = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            sink.close();
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, count + extra)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
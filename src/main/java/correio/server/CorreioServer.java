@@ -0,0 +1,216 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+import correio.server.metrics.MetricsHttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Nucleo do servidor, sem interface grafica: recupera as encomendas do diario, abre as portas
+ * passivas, o endpoint de metricas (opcional) e o motor de controle escolhido em
+ * {@link ServerConfig}. Usado pelo
+ * {@link HeadlessServer}, pela janela {@link FtpServer} e por testes que sobem o servidor
+ * no proprio processo (com a porta 0 e {@link #port()} para descobrir a porta real).
+ * Pode ser iniciado de novo depois de {@link #stop()}: cada {@link #start()} recarrega o estado do disco.
+ */
+public class CorreioServer {
+    private final ServerConfig config;
+    private final Path uploadsDir;
+    private ConcurrentMap<String, ShipmentInfo> tracking;
+    private ShipmentJournal journal;
+    private PassivePortPool passivePorts;
+    private ServerEngine engine;
+    private ServerContext context;
+    private MetricsHttpServer metricsServer;
+
+    public CorreioServer(ServerConfig config) {
+        this.config = config;
+        this.uploadsDir = config.uploadsDir();
+    }
+
+    /** Carrega o estado e comeca a aceitar conexoes. Retorna assim que a porta de controle estiver aberta. */
+    public synchronized void start() throws IOException {
+        if (engine != null) throw new IllegalStateException("Servidor ja iniciado");
+        // Estado novo a cada inicio: o diario fechado por um stop() anterior nao e reaproveitado
+        tracking = createTracking(config.trackingStore(), uploadsDir);
+        journal = new ShipmentJournal(uploadsDir, config.journalSnapshotEvery(), config.journalFsync());
+        try {
+            Files.createDirectories(uploadsDir);
+            discardIncompleteUploads();
+            loadShipments();
+
+            ShipmentIdAllocator idAllocator = ShipmentIdAllocator.create(config.idScheme(), config.idNode(), tracking.keySet());
+            if (!config.passivePorts().isEmpty()) {
+                passivePorts = PassivePortPool.open(config.passivePorts(), config.passiveTimeoutMillis());
+                ServerLog.info("Portas passivas: " + passivePorts.describe() + " (" + passivePorts.size() + " listeners)");
+            }
+            context = new ServerContext(uploadsDir, tracking, journal, idAllocator, passivePorts);
+            context.getBlobStore().open(tracking.values());
+            if (config.metricsPort() >= 0) {
+                metricsServer = MetricsHttpServer.start(
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), config.metricsPort()), context.getMetrics());
+                ServerLog.info("Metricas em http://127.0.0.1:" + metricsServer.address().getPort() + "/metrics");
+            }
+            ServerEngine created = ServerEngine.create(config.engine(), config.port(), context, config.executorMode(), config.nioThreads());
+            created.start();
+            engine = created;
+        } catch (IOException | RuntimeException e) {
+            closeResources();
+            throw e;
+        }
+
+        String ipAddress;
+        try {
+            ipAddress = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            ipAddress = "localhost";
+        }
+        ServerLog.info("Servidor FTP (PASV) iniciado em: " + ipAddress + ":" + engine.port() + " [motor " + engine.name() + "]");
+        ServerLog.info("Aguardando conexões de controle...");
+        ServerLog.info("------------------------------------");
+    }
+
+    /** Para o motor, fecha as portas passivas e grava o snapshot final do diario. */
+    public synchronized void stop() {
+        ServerLog.info("------------------------------------");
+        ServerLog.info("Iniciando encerramento do servidor...");
+        if (engine != null) {
+            engine.stop();
+            engine = null;
+        }
+        closeResources();
+        ServerLog.info("Servidor encerrado.");
+    }
+
+    private void closeResources() {
+        if (metricsServer != null) {
+            metricsServer.close();
+            metricsServer = null;
+        }
+        try {
+            if (passivePorts != null) passivePorts.close();
+        } catch (IOException e) {
+            ServerLog.error("Erro ao fechar as portas passivas: " + e.getMessage());
+        }
+        passivePorts = null;
+        try {
+            if (journal != null) journal.close();
+        } catch (IOException e) {
+            ServerLog.error("Erro ao fechar o diario de encomendas: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return engine != null;
+    }
+
+    /** Porta de controle aberta; so e valida depois de {@link #start()}. */
+    public synchronized int port() {
+        if (engine == null) throw new IllegalStateException("Servidor nao iniciado");
+        return engine.port();
+    }
+
+    /** Porta do endpoint de metricas, ou -1 se ele nao foi aberto. */
+    public synchronized int metricsPort() {
+        return metricsServer != null ? metricsServer.address().getPort() : -1;
+    }
+
+    public ServerConfig getConfig() { return config; }
+    /** Estado compartilhado das sessoes, ou null antes de {@link #start()}. */
+    public synchronized ServerContext getContext() { return context; }
+
+    // Uploads interrompidos por uma queda do servidor ficam em uploads/.incoming; nunca foram publicados.
+    private void discardIncompleteUploads() {
+        Path incomingDir = uploadsDir.resolve(DataTransfers.INCOMING_DIR);
+        if (!Files.isDirectory(incomingDir)) return;
+        try (Stream<Path> parts = Files.list(incomingDir)) {
+            parts.forEach(part -> {
+                try {
+                    Files.deleteIfExists(part);
+                    ServerLog.info(" -> Upload incompleto descartado: " + part.getFileName());
+                } catch (IOException e) {
+                    ServerLog.error("Erro ao descartar upload incompleto " + part.getFileName() + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            ServerLog.error("Erro ao ler o diretório de uploads incompletos: " + e.getMessage());
+        }
+    }
+
+    private static ConcurrentMap<String, ShipmentInfo> createTracking(String store, Path uploadsDir) {
+        return switch (store) {
+            case "map" -> new ConcurrentHashMap<>();
+            case "packed" -> new PackedShipmentTable(uploadsDir);
+            default -> throw new IllegalArgumentException("Mapa de rastreio desconhecido: " + store + " (use map ou packed)");
+        };
+    }
+
+    // O estado vem do diario (snapshot + cauda do log). Sem diario, e a primeira execucao
+    // desta versao: os nomes dos arquivos sao interpretados uma unica vez e viram o snapshot inicial.
+    private void loadShipments() throws IOException {
+        if (journal.exists()) {
+            long start = System.nanoTime();
+            int replayed = journal.recover(tracking);
+            journal.open(tracking);
+            ServerLog.info(String.format("%d encomenda(s) carregada(s) do diario (%d registro(s) do log) em %d ms.",
+                    tracking.size(), replayed, (System.nanoTime() - start) / 1_000_000));
+        } else {
+            loadShipmentsFromDisk(tracking);
+            journal.open(tracking);
+            journal.snapshot();
+            ServerLog.info("Encomendas migradas para o diario.");
+        }
+    }
+
+    // Caminho de migracao: interpreta os nomes "ID_nome_STATUS.ext" dos arquivos antigos
+    private void loadShipmentsFromDisk(ConcurrentMap<String, ShipmentInfo> trackingMap) {
+        ServerLog.info("Verificando encomendas existentes no disco...");
+        try (Stream<Path> paths = Files.list(uploadsDir)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                // Lógica para carregar arquivos do disco (inalterada)
+                String fullFileName = path.getFileName().toString();
+                String basePart;
+                String extensionPart = "";
+                int lastDot = fullFileName.lastIndexOf('.');
+                if (lastDot > 0) {
+                    basePart = fullFileName.substring(0, lastDot);
+                    extensionPart = fullFileName.substring(lastDot);
+                } else {
+                    basePart = fullFileName;
+                }
+                String[] parts = basePart.split("_");
+                if (parts.length < 3) return;
+                String shipmentId = parts[0];
+                ShipmentStatus status = ShipmentStatus.find(parts[parts.length - 1]);
+                if (status == null) return; // nao segue o padrao ID_nome_STATUS
+                String originalBaseName = String.join("_", Arrays.copyOfRange(parts, 1, parts.length - 1));
+                String originalFilename = originalBaseName + extensionPart;
+                try {
+                    Instant instant = Files.getLastModifiedTime(path).toInstant();
+                    LocalDateTime timestamp = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+                    ShipmentInfo info = new ShipmentInfo(shipmentId, originalFilename, timestamp, status, path);
+                    trackingMap.put(shipmentId, info);
+                    ServerLog.debug(" -> Encomenda carregada: ", info);
+                } catch (IOException e) {
+                    ServerLog.error("Erro ao ler metadados do arquivo " + fullFileName + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            ServerLog.error("Erro ao ler o diretório de uploads: " + e.getMessage());
+        }
+        ServerLog.info(trackingMap.size() + " encomenda(s) carregada(s) do disco.");
+    }
+}
@@ -0,0 +1,221 @@
+package correio.server;
+
+import correio.protocol.DeflateStreams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Rotinas de copia usadas pelas transferencias no canal de dados.
+ */
+public final class DataTransfers {
+    // Permite desligar o caminho zero-copy (-Dcorreio.zerocopy=false) para comparacao ou diagnostico
+    private static final boolean ZERO_COPY = Boolean.parseBoolean(System.getProperty("correio.zerocopy", "true"));
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Quantidade pedida a cada transferFrom; o JDK copia em blocos menores internamente
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    /** Subdiretorio (no mesmo volume dos uploads) onde ficam os arquivos ainda em recepcao. */
+    public static final String INCOMING_DIR = ".incoming";
+
+    private DataTransfers() {
+    }
+
+    /**
+     * Envia o arquivo inteiro pelo socket de dados. Quando o socket tem um {@link SocketChannel}
+     * usa {@link FileChannel#transferTo}, que o kernel atende com sendfile sem copiar os bytes
+     * para o heap. Sem canal (ou se o transferTo parar de progredir) cai para a copia com buffer,
+     * continuando da posicao ja enviada.
+     *
+     * @return numero de bytes enviados
+     */
+    public static long sendFile(Path file, Socket socket) throws IOException {
+        return sendFile(file, socket, 0);
+    }
+
+    /**
+     * Envia o arquivo a partir do byte {@code offset} (marcador do REST).
+     *
+     * @return numero de bytes enviados
+     */
+    public static long sendFile(Path file, Socket socket, long offset) throws IOException {
+        return sendRange(file, socket, offset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Envia no maximo {@code length} bytes do arquivo a partir do byte {@code offset}
+     * (intervalo do RANG, usado pelos downloads segmentados).
+     *
+     * @return numero de bytes enviados
+     */
+    public static long sendRange(Path file, Socket socket, long offset, long length) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long start = Math.min(offset, size);
+            long end = length >= size - start ? size : start + length;
+            long position = start;
+
+            SocketChannel target = socket.getChannel();
+            if (ZERO_COPY && target != null) {
+                while (position < end) {
+                    long sent = source.transferTo(position, end - position, target);
+                    if (sent <= 0) break;
+                    position += sent;
+                }
+            }
+            if (position < end) {
+                position += copyBuffered(source, position, end, socket.getOutputStream());
+            }
+            return position - start;
+        }
+    }
+
+    /**
+     * Envia no maximo {@code length} bytes a partir de {@code offset} comprimidos com deflate
+     * (MODE Z). Nao ha zero-copy: os bytes precisam passar pelo compressor no heap.
+     */
+    public static DeflateStreams.Report sendDeflated(Path file, Socket socket, long offset, long length, int level) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long start = Math.min(offset, size);
+            long end = length >= size - start ? size : start + length;
+            DeflateStreams.Output out = new DeflateStreams.Output(socket.getOutputStream(), level);
+            try {
+                copyBuffered(source, start, end, out);
+            } finally {
+                out.close(); // termina o fluxo zlib e libera o Deflater; fecha tambem o socket de dados
+            }
+            return out.report();
+        }
+    }
+
+    private static long copyBuffered(FileChannel source, long position, long end, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long copied = 0;
+        int n;
+        while (position + copied < end) {
+            buffer.limit((int) Math.min(buffer.capacity(), end - position - copied));
+            if ((n = source.read(buffer, position + copied)) <= 0) break;
+            out.write(buffer.array(), 0, n);
+            copied += n;
+            buffer.clear();
+        }
+        out.flush();
+        return copied;
+    }
+
+    /**
+     * Recebe o conteudo do socket de dados no arquivo parcial {@code part} (em
+     * {@value #INCOMING_DIR}), a partir do byte {@code offset}: 0 em um upload novo, o tamanho
+     * ja recebido em uma retomada (REST). Os bytes sao gravados com {@link FileChannel#transferFrom}
+     * a partir do {@link SocketChannel} (sem passar pelo heap). Se o cliente anunciou o tamanho
+     * ({@code sizeHint >= 0}) o arquivo ja nasce com esse comprimento, evitando que o sistema de
+     * arquivos cresca o arquivo a cada escrita.
+     *
+     * Em caso de erro o arquivo parcial e mantido, truncado no ultimo bloco gravado, para que o
+     * envio possa ser retomado; {@link #publish} o move para o nome definitivo.
+     *
+     * @return tamanho do arquivo parcial ao final (offset + bytes recebidos)
+     */
+    public static long receivePart(Socket socket, Path part, long offset, long sizeHint) throws IOException {
+        return receivePart(socket, part, offset, sizeHint, null);
+    }
+
+    /**
+     * Como {@link #receivePart(Socket, Path, long, long)}, alimentando {@code digest} com o
+     * conteudo inteiro do arquivo enquanto ele chega (em uma retomada, os {@code offset} bytes ja
+     * recebidos sao lidos do parcial primeiro). Os bytes passam por um buffer direto entre o
+     * socket e o arquivo; o transferFrom de um socket faz a mesma copia internamente, entao o
+     * hash nao custa uma leitura extra.
+     *
+     * Com o {@link BlobStore} ligado (o padrao), o STOR sempre passa um digest: este caminho
+     * substitui a recepcao por {@link FileChannel#transferFrom}, que so e usada com
+     * {@code digest} null (armazenamento desligado).
+     */
+    public static long receivePart(Socket socket, Path part, long offset, long sizeHint, MessageDigest digest) throws IOException {
+        return receive(socket.getChannel(), socket.getInputStream(), part, offset, sizeHint, digest);
+    }
+
+    /**
+     * Recebe o conteudo de um stream ja decodificado (o {@link DeflateStreams.Input} do MODE Z),
+     * sempre pela copia com buffer.
+     */
+    public static long receivePart(InputStream in, Path part, long offset, long sizeHint, MessageDigest digest) throws IOException {
+        return receive(null, in, part, offset, sizeHint, digest);
+    }
+
+    private static long receive(SocketChannel source, InputStream in, Path part, long offset, long sizeHint,
+                                MessageDigest digest) throws IOException {
+        Files.createDirectories(part.getParent());
+        try (FileChannel file = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (file.size() < offset) throw new IOException("Offset " + offset + " alem do recebido: " + file.size());
+            if (file.size() > offset) file.truncate(offset); // REST antes do fim: descarta o excedente
+            if (sizeHint > offset) {
+                file.write(ByteBuffer.allocate(1), sizeHint - 1);
+            }
+
+            if (digest != null && offset > 0) {
+                digestRange(file, offset, digest);
+            }
+
+            long position = offset;
+            try {
+                if (digest != null && source != null) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                    while (source.read(buffer) > 0) {
+                        buffer.flip();
+                        digest.update(buffer.duplicate());
+                        while (buffer.hasRemaining()) position += file.write(buffer, position);
+                        buffer.clear();
+                    }
+                } else if (ZERO_COPY && source != null) {
+                    long n;
+                    while ((n = file.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                        position += n;
+                    }
+                } else {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        if (digest != null) digest.update(buffer, 0, n);
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                        while (chunk.hasRemaining()) file.write(chunk, position + chunk.position());
+                        position += n;
+                    }
+                }
+            } finally {
+                // Descarta a pre-alocacao alem do recebido (cliente enviou menos ou a conexao caiu)
+                if (file.size() != position) file.truncate(position);
+            }
+            return position;
+        }
+    }
+
+    private static void digestRange(FileChannel file, long length, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+            int n = file.read(buffer, position);
+            if (n <= 0) throw new EOFException("Parcial menor que o offset " + length);
+            buffer.flip();
+            digest.update(buffer);
+            position += n;
+        }
+    }
+
+    /** Publica o upload completo renomeando atomicamente o arquivo parcial para {@code target}. */
+    public static void publish(Path part, Path target) throws IOException {
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
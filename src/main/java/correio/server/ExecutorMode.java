@@ -0,0 +1,34 @@
+package correio.server;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tipo de thread usado para as sessoes de controle e as transferencias de dados.
+ * Escolhido na inicializacao por {@link ServerConfig#EXECUTOR} ({@code --executor}).
+ */
+public enum ExecutorMode {
+    /** Pool elastico de threads de plataforma (comportamento original). */
+    PLATFORM,
+    /** Uma thread virtual por tarefa: sessoes ociosas nao prendem threads do SO. */
+    VIRTUAL;
+
+    public ExecutorService newExecutor(String namePrefix) {
+        ThreadFactory factory = this == VIRTUAL
+                ? Thread.ofVirtual().name(namePrefix + "-", 0).factory()
+                : Thread.ofPlatform().name(namePrefix + "-", 0).factory();
+        return this == VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(factory)
+                : Executors.newCachedThreadPool(factory);
+    }
+
+    public static ExecutorMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Modo de executor desconhecido: " + value);
+        }
+    }
+}
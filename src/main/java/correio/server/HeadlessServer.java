@@ -0,0 +1,51 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.IOException;
+
+/**
+ * Ponto de entrada sem interface grafica, para servidores Linux e harnesses de benchmark:
+ * nao carrega AWT/Swing. Configurado por opcoes de linha de comando e/ou {@code --config}
+ * (veja {@link ServerConfig}); encerra de forma ordenada no SIGTERM/Ctrl+C.
+ *
+ * Exemplo: {@code java correio.server.HeadlessServer --port 2121 --dir /srv/correio --executor virtual}
+ */
+public final class HeadlessServer {
+
+    private HeadlessServer() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+            System.out.println(ServerConfig.USAGE);
+            return;
+        }
+
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.USAGE);
+            System.exit(2);
+            return;
+        }
+        config.applyProcessWideSettings();
+
+        CorreioServer server = new CorreioServer(config);
+        try {
+            server.start();
+        } catch (IOException | IllegalArgumentException e) {
+            ServerLog.error("Falha ao iniciar o servidor", e);
+            ServerLog.shutdown();
+            System.exit(1);
+        }
+
+        // As threads do motor mantem a JVM viva; o gancho grava o snapshot final ao encerrar.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            ServerLog.shutdown();
+        }, "ftp-shutdown"));
+    }
+}
@@ -0,0 +1,409 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor baseado em {@link Selector}: todas as conexoes de controle sao multiplexadas
+ * em poucos event loops, em vez de uma thread bloqueada em {@code readLine()} por cliente.
+ *
+ * Cada conexao tem uma pequena maquina de estados ({@link State}). Comandos rapidos
+ * (USER, PASS, TYPE, STAT, QUIT) rodam direto no event loop; comandos que aguardam a
+ * conexao de dados ou fazem I/O de disco (PASV, LIST, STOR, RETR) sao despachados para
+ * um pool de workers e, enquanto isso, a leitura da sessao fica suspensa para manter a
+ * ordem dos comandos. Os workers usam o {@link ExecutorMode} configurado. Os comandos sao
+ * lidos de um {@link CommandBuffer} por sessao, e as respostas de cada lote saem em uma
+ * unica escrita no socket.
+ * A semantica dos comandos e a mesma do {@link ClientHandler}.
+ */
+public class NioServerEngine implements ServerEngine {
+    private final int port;
+    private final ServerContext context;
+    private final EventLoop[] loops;
+    private final ExecutorMode executorMode;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    public NioServerEngine(int port, ServerContext context, int loopCount, ExecutorMode executorMode) {
+        if (loopCount < 1) throw new IllegalArgumentException("loopCount deve ser >= 1");
+        this.port = port;
+        this.context = context;
+        this.loops = new EventLoop[loopCount];
+        this.executorMode = executorMode;
+    }
+
+    static int defaultLoopCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        workers = executorMode.newExecutor("ftp-nio-worker");
+        context.getMetrics().executor("ftp-nio-worker", workers);
+        running = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(Selector.open());
+            Thread t = new Thread(loops[i], "ftp-nio-loop-" + i);
+            loops[i].thread = t;
+            EventLoop loop = loops[i];
+            context.getMetrics().gauge("correio_nio_loop_sessions", "loop=\"" + i + "\"",
+                    "Conexoes de controle registradas em cada event loop.", () -> loop.selector.keys().size());
+            context.getMetrics().gauge("correio_nio_loop_tasks", "loop=\"" + i + "\"",
+                    "Tarefas aguardando cada event loop.", () -> loop.tasks.size());
+            t.start();
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "ftp-nio-accept");
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                // Sem Nagle: o 226 nao pode esperar o ACK atrasado do 150 (~40 ms por transferencia)
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                context.getMetrics().connectionAccepted();
+                ServerLog.info("Nova conexão de controle de: " + channel.socket().getInetAddress().getHostAddress());
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                loop.execute(() -> loop.register(channel));
+            } catch (ClosedChannelException e) {
+                if (!running) ServerLog.info("Servidor de controle encerrado.");
+                return;
+            } catch (IOException e) {
+                if (running) ServerLog.error("Erro no socket de controle: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            ServerLog.error("Erro ao fechar o socket do servidor: " + e.getMessage());
+        }
+
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public int port() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    @Override
+    public String name() {
+        return "nio(" + loops.length + " loops)/" + executorMode.name().toLowerCase();
+    }
+
+    private enum State {
+        /** Aguardando/processando comandos no event loop. */
+        READY,
+        /** Um comando bloqueante esta em execucao em um worker; leitura suspensa. */
+        BUSY,
+        /** QUIT recebido: fecha assim que as respostas pendentes forem enviadas. */
+        CLOSING
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        volatile Thread thread;
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Session session = new Session(channel, this);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                context.getMetrics().sessionOpened();
+                session.out.println(ClientHandler.WELCOME);
+                session.out.flush();
+            } catch (IOException e) {
+                ServerLog.error("Erro ao registrar conexão de controle: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            ServerLog.error("Erro inesperado no event loop", e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Session session = (Session) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) session.onReadable();
+                            if (key.isValid() && key.isWritable()) session.flushOutbound();
+                        } catch (IOException e) {
+                            session.close();
+                        } catch (RuntimeException e) {
+                            // Uma sessao com erro inesperado e encerrada sem derrubar as demais do loop
+                            ServerLog.error("Erro inesperado na sessao de controle", e);
+                            session.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (running) ServerLog.error("Erro no event loop", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Session) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private final class Session {
+        final SocketChannel channel;
+        final EventLoop loop;
+        final ClientHandler handler;
+        final ControlReplies out;
+        final CommandBuffer input = new CommandBuffer();
+        final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private ByteBuffer replyView; // sobre o buffer do ControlReplies, para escrever sem copiar
+        SelectionKey key;
+        State state = State.READY;
+        boolean closed;
+
+        Session(SocketChannel channel, EventLoop loop) throws IOException {
+            this.channel = channel;
+            this.loop = loop;
+            this.handler = new ClientHandler(channel.socket().getLocalAddress(), channel.socket().getInetAddress(), context);
+            this.out = new ControlReplies(new ReplyStream(this), context.getMetrics());
+        }
+
+        void onReadable() throws IOException {
+            if (state != State.READY) return; // um worker ainda usa a linha atual do buffer
+            if (input.read(channel) < 0) {
+                close();
+                return;
+            }
+            processPending();
+        }
+
+        // Executa os comandos ja recebidos; as respostas do lote saem em uma unica escrita
+        private void processPending() {
+            while (state == State.READY && !closed && input.nextLine()) {
+                Command command = input.command();
+                if (command != null && command.blocking) {
+                    out.flush(); // respostas anteriores saem antes das do worker
+                    state = State.BUSY;
+                    updateInterest();
+                    workers.execute(() -> {
+                        boolean keepOpen = false;
+                        try {
+                            keepOpen = dispatch();
+                            out.flush();
+                        } finally {
+                            // Sempre volta ao loop: sem isso a sessao ficaria BUSY, sem ler nem fechar
+                            boolean open = keepOpen;
+                            loop.execute(() -> afterCommand(open));
+                        }
+                    });
+                    return;
+                }
+                if (!dispatch()) {
+                    out.flush();
+                    beginClose();
+                    return;
+                }
+            }
+            out.flush();
+            updateInterest();
+        }
+
+        private boolean dispatch() {
+            try {
+                return handler.dispatch(input, out);
+            } catch (IOException | RuntimeException e) {
+                ServerLog.error("Erro ao executar comando", e);
+                return false;
+            }
+        }
+
+        private void afterCommand(boolean keepOpen) {
+            if (!channel.isOpen()) return;
+            if (!keepOpen) {
+                beginClose();
+                return;
+            }
+            state = State.READY;
+            processPending();
+        }
+
+        private void beginClose() {
+            state = State.CLOSING;
+            updateInterest();
+            if (outbound.isEmpty()) close();
+        }
+
+        private void updateInterest() {
+            if (key == null || !key.isValid()) return;
+            int ops = state == State.READY ? SelectionKey.OP_READ : 0;
+            if (!outbound.isEmpty()) ops |= SelectionKey.OP_WRITE;
+            key.interestOps(ops);
+        }
+
+        /**
+         * Recebe um lote de respostas do {@link ControlReplies}. No event loop, com a fila vazia,
+         * escreve direto do buffer das respostas; so o que nao couber no socket (ou o que vier
+         * de um worker) e copiado para a fila de saida.
+         */
+        void send(byte[] bytes, int off, int len) {
+            if (loop.inLoop() && outbound.isEmpty() && channel.isOpen()) {
+                if (replyView == null || replyView.array() != bytes) replyView = ByteBuffer.wrap(bytes);
+                replyView.clear().limit(off + len).position(off);
+                try {
+                    channel.write(replyView);
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                if (!replyView.hasRemaining()) return;
+                outbound.add(ByteBuffer.wrap(Arrays.copyOfRange(bytes, replyView.position(), off + len)));
+                updateInterest();
+                return;
+            }
+            enqueue(ByteBuffer.wrap(Arrays.copyOfRange(bytes, off, off + len)));
+        }
+
+        void enqueue(ByteBuffer reply) {
+            outbound.add(reply);
+            if (loop.inLoop()) {
+                flushQuietly();
+            } else {
+                loop.execute(this::flushQuietly);
+            }
+        }
+
+        private void flushQuietly() {
+            try {
+                flushOutbound();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void flushOutbound() throws IOException {
+            if (!channel.isOpen()) return;
+            ByteBuffer buf;
+            while ((buf = outbound.peek()) != null) {
+                channel.write(buf);
+                if (buf.hasRemaining()) break;
+                outbound.poll();
+            }
+            if (state == State.CLOSING && outbound.isEmpty()) {
+                close();
+            } else {
+                updateInterest();
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (key != null) {
+                key.cancel();
+                context.getMetrics().sessionClosed();
+            }
+            try {
+                handler.closeDataChannel();
+                if (channel.isOpen()) channel.close();
+            } catch (IOException e) {
+                ServerLog.warn("Erro ao fechar sessao de controle", e);
+            }
+        }
+    }
+
+    /** Destino do {@link ControlReplies} da sessao: cada flush chega aqui como um unico bloco. */
+    private static final class ReplyStream extends OutputStream {
+        private final Session session;
+
+        ReplyStream(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            session.send(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,694 @@
+package correio.server;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Mapa de rastreio compacto para dezenas de milhoes de encomendas, escolhido com
+ * {@code correio.tracking=packed}. Em vez de um no de hash, uma String de chave e um
+ * {@link ShipmentInfo} por encomenda, cada encomenda ocupa tres longs em arrays primitivos:
+ * <ul>
+ *   <li>o ID como numero: a sequencia ("0042") ou o valor de 64 bits do alocador "time";</li>
+ *   <li>o horario do envio, na escala de {@link ShipmentInfo#toEpochNanos};</li>
+ *   <li>metadados empacotados: status, formato do ID, origem do Path e o indice do nome do
+ *       arquivo em uma tabela de nomes sem repeticao.</li>
+ * </ul>
+ * O indice ID -> registro e de enderecamento aberto (um int por slot) e a ordem temporal do
+ * LIST e um array de ints com os registros ordenados, entao a tabela tambem serve de
+ * {@link ShipmentTimeline} sem objetos por encomenda. O Path do arquivo nao e guardado quando
+ * e o nome padrao {@code ID_nome}; so nomes antigos ficam em um mapa a parte.
+ *
+ * Leituras nao travam: cada registro e escrito antes de o slot que aponta para ele ser
+ * publicado (release), e os blocos de registros nunca sao copiados, entao o compare-and-set do
+ * status opera sempre sobre o array vivo. Escritas (novas encomendas, diario) sao serializadas
+ * pelo monitor da tabela. {@link #get} devolve uma visao criada na hora cujo status le e altera
+ * o da tabela. IDs fora dos dois formatos (ex.: migrados de nomes antigos) ficam em um
+ * {@link ConcurrentHashMap} comum.
+ */
+public class PackedShipmentTable extends AbstractMap<String, ShipmentInfo> implements ConcurrentMap<String, ShipmentInfo> {
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Registros e ordem em blocos de 64K: crescer so copia o array de referencias
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK - 1;
+
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+
+    // Long de metadados: status (bits 0-1), formato do ID (2-3), origem do Path (4-5), nome (32-63)
+    private static final long STATUS_MASK = 0x3;
+    private static final int SCHEME_SHIFT = 2;
+    private static final int FILE_SHIFT = 4;
+    private static final int NAME_SHIFT = 32;
+    private static final int FILE_NONE = 0;
+    private static final int FILE_DEFAULT = 1; // uploads/ID_nome
+    private static final int FILE_CUSTOM = 2;  // em customFiles
+
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final ShipmentStatus[] STATUSES = ShipmentStatus.values();
+
+    private final Path uploadsDir;
+    private final ConcurrentMap<String, ShipmentInfo> overflow = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Path> customFiles = new ConcurrentHashMap<>();
+
+    // Nomes de arquivo sem repeticao; nameIds so e usado por quem escreve
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private volatile String[] names = new String[1024];
+    private int nameCount;
+
+    // Cada registro sao tres longs vizinhos (ID, horario, metadados): uma busca toca uma linha de cache
+    private static final int FIELDS = 3;
+    private static final int KEY = 0;
+    private static final int STAMP = 1;
+    private static final int META = 2;
+    private volatile long[][] records = new long[0][];
+    private int recordCount;
+
+    // Slot: EMPTY, TOMBSTONE ou registro + 1
+    private volatile int[] slots = new int[1024];
+    private int usedSlots;
+    private volatile int size;
+
+    private volatile Order order = new Order(new int[0][], 0);
+    // Durante a carga do diario a ordem pode chegar embaralhada; e ordenada uma vez em timeline()
+    private boolean sorted = true;
+    private Timeline timeline;
+
+    /** Registros em ordem crescente de (horario, ID); instancias nunca mudam dentro de {@code size}. */
+    private record Order(int[][] chunks, int size) {
+        int get(int i) {
+            return chunks[i >>> CHUNK_BITS][i & CHUNK_MASK];
+        }
+    }
+
+    public PackedShipmentTable(Path uploadsDir) {
+        this.uploadsDir = uploadsDir;
+    }
+
+    @Override
+    public int size() {
+        return size + overflow.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String id)) return false;
+        int scheme = schemeOf(id);
+        if (scheme < 0) return overflow.containsKey(id);
+        return find(keyOf(id, scheme), scheme) >= 0;
+    }
+
+    @Override
+    public ShipmentInfo get(Object key) {
+        if (!(key instanceof String id)) return null;
+        int scheme = schemeOf(id);
+        if (scheme < 0) return overflow.get(id);
+        int record = find(keyOf(id, scheme), scheme);
+        return record < 0 ? null : view(record, id);
+    }
+
+    @Override
+    public synchronized ShipmentInfo put(String id, ShipmentInfo info) {
+        Objects.requireNonNull(info);
+        int scheme = schemeOf(id);
+        if (scheme < 0) return overflow.put(id, info);
+        long key = keyOf(id, scheme);
+        int slot = slotOf(key, scheme);
+        if (slot < 0) {
+            int record = append(key, scheme, id, info);
+            insertSlot(key, scheme, record);
+            size++;
+            orderInsert(record);
+            return null;
+        }
+        int existing = slots[slot] - 1;
+        ShipmentInfo previous = copyOf(existing, id);
+        if (stampAt(existing) == info.getTimestampNanos()) {
+            // Mesma encomenda (registro do diario): atualiza no lugar, sem mexer na ordem
+            LONGS.setVolatile(chunkOf(existing), offsetOf(existing) + META, meta(existing, scheme, id, info));
+            return previous;
+        }
+        int record = append(key, scheme, id, info);
+        INTS.setRelease(slots, slot, record + 1);
+        orderRemove(existing);
+        orderInsert(record);
+        customFiles.remove(existing);
+        return previous;
+    }
+
+    @Override
+    public synchronized ShipmentInfo remove(Object key) {
+        if (!(key instanceof String id)) return null;
+        int scheme = schemeOf(id);
+        if (scheme < 0) return overflow.remove(id);
+        int slot = slotOf(keyOf(id, scheme), scheme);
+        if (slot < 0) return null;
+        int record = slots[slot] - 1;
+        ShipmentInfo previous = copyOf(record, id);
+        INTS.setRelease(slots, slot, TOMBSTONE);
+        size--;
+        orderRemove(record);
+        customFiles.remove(record);
+        return previous;
+    }
+
+    @Override
+    public synchronized ShipmentInfo putIfAbsent(String key, ShipmentInfo value) {
+        ShipmentInfo current = get(key);
+        return current != null ? current : put(key, value);
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        ShipmentInfo current = get(key);
+        if (current == null || !current.equals(value)) return false;
+        remove(key);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replace(String key, ShipmentInfo oldValue, ShipmentInfo newValue) {
+        ShipmentInfo current = get(key);
+        if (current == null || !current.equals(oldValue)) return false;
+        put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public synchronized ShipmentInfo replace(String key, ShipmentInfo value) {
+        return containsKey(key) ? put(key, value) : null;
+    }
+
+    // Os registros so crescem e a visao de timeline() guarda a ordem atual: esvaziar exigiria
+    // recriar todo o estado do escritor. O servidor nunca esvazia o rastreio.
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("PackedShipmentTable nao suporta clear()");
+    }
+
+    /** Percorre em ordem crescente de horario (a ordem do snapshot do diario) e depois os IDs avulsos. */
+    @Override
+    public Set<Map.Entry<String, ShipmentInfo>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, ShipmentInfo>> iterator() {
+                return new EntryIterator(order, overflow.entrySet().iterator());
+            }
+
+            @Override
+            public int size() {
+                return PackedShipmentTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * Indice temporal sobre a ordem primitiva desta tabela. Na primeira chamada ordena o que
+     * a carga do diario inseriu fora de ordem; dai em diante cada insercao mantem a ordem.
+     */
+    public synchronized ShipmentTimeline timeline() {
+        if (timeline == null) {
+            if (!sorted) sortOrder();
+            sorted = true;
+            timeline = new Timeline();
+        }
+        return timeline;
+    }
+
+    // ---- indice ID -> registro ----
+
+    private static int schemeOf(String id) {
+        if (SequenceIdAllocator.isNumeric(id) && id.length() >= 4 && (id.length() == 4 || id.charAt(0) != '0')) return SEQUENCE;
+        return TimeOrderedIdAllocator.decode(id) >= 0 ? TIME : -1;
+    }
+
+    private static long keyOf(String id, int scheme) {
+        return scheme == SEQUENCE ? Long.parseLong(id) : TimeOrderedIdAllocator.decode(id);
+    }
+
+    private static int hash(long key, int scheme) {
+        long h = key * 0x9E3779B97F4A7C15L + scheme;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long key, int scheme) {
+        int[] table = slots;
+        int mask = table.length - 1;
+        for (int i = hash(key, scheme) & mask; ; i = (i + 1) & mask) {
+            int slot = (int) INTS.getAcquire(table, i);
+            if (slot == EMPTY) return -1;
+            if (slot != TOMBSTONE && matches(slot - 1, key, scheme)) return slot - 1;
+        }
+    }
+
+    // Posicao do slot que aponta para a chave, ou -1; so para quem escreve
+    private int slotOf(long key, int scheme) {
+        int[] table = slots;
+        int mask = table.length - 1;
+        for (int i = hash(key, scheme) & mask; ; i = (i + 1) & mask) {
+            int slot = table[i];
+            if (slot == EMPTY) return -1;
+            if (slot != TOMBSTONE && matches(slot - 1, key, scheme)) return i;
+        }
+    }
+
+    private boolean matches(int record, long key, int scheme) {
+        long[] chunk = chunkOf(record);
+        int offset = offsetOf(record);
+        return chunk[offset + KEY] == key && ((chunk[offset + META] >>> SCHEME_SHIFT) & 0x3) == scheme;
+    }
+
+    private void insertSlot(long key, int scheme, int record) {
+        // Fator de carga ate 1/2 contando tombstones; ao passar, reconstroi e dobra se os vivos
+        // ja ocupam mais de 1/3 (senao so descarta os tombstones)
+        if ((usedSlots + 1) * 2L > slots.length) {
+            int capacity = slots.length;
+            while ((size + 1) * 3L > capacity) capacity *= 2;
+            rehash(capacity);
+        }
+        int[] table = slots;
+        int mask = table.length - 1;
+        int i = hash(key, scheme) & mask;
+        while (table[i] != EMPTY && table[i] != TOMBSTONE) i = (i + 1) & mask;
+        if (table[i] == EMPTY) usedSlots++;
+        INTS.setRelease(table, i, record + 1);
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int slot : slots) {
+            if (slot == EMPTY || slot == TOMBSTONE) continue;
+            int record = slot - 1;
+            long[] chunk = chunkOf(record);
+            int offset = offsetOf(record);
+            int i = hash(chunk[offset + KEY], (int) ((chunk[offset + META] >>> SCHEME_SHIFT) & 0x3)) & mask;
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i] = slot;
+        }
+        usedSlots = size;
+        slots = table; // publica o indice inteiro de uma vez; leitores no antigo continuam corretos
+    }
+
+    // ---- registros ----
+
+    private int append(long key, int scheme, String id, ShipmentInfo info) {
+        int record = recordCount;
+        if (record >>> CHUNK_BITS == records.length) {
+            long[][] chunks = Arrays.copyOf(records, records.length + 1);
+            chunks[chunks.length - 1] = new long[CHUNK * FIELDS];
+            records = chunks;
+        }
+        long[] chunk = chunkOf(record);
+        int offset = offsetOf(record);
+        chunk[offset + KEY] = key;
+        chunk[offset + STAMP] = info.getTimestampNanos();
+        chunk[offset + META] = meta(record, scheme, id, info);
+        recordCount++;
+        return record;
+    }
+
+    private long meta(int record, int scheme, String id, ShipmentInfo info) {
+        int name = nameId(info.getFilename());
+        Path file = info.getFile();
+        int origin;
+        if (file == null) {
+            origin = FILE_NONE;
+        } else if (file.equals(defaultFile(id, info.getFilename()))) {
+            origin = FILE_DEFAULT;
+        } else {
+            origin = FILE_CUSTOM;
+            customFiles.put(record, file);
+        }
+        return ((long) name << NAME_SHIFT) | ((long) origin << FILE_SHIFT) | ((long) scheme << SCHEME_SHIFT)
+                | info.getStatus().ordinal();
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        if (nameCount == names.length) names = Arrays.copyOf(names, nameCount * 2);
+        names[nameCount] = name;
+        nameIds.put(name, nameCount);
+        return nameCount++;
+    }
+
+    private Path defaultFile(String id, String filename) {
+        return uploadsDir.resolve(id + "_" + filename);
+    }
+
+    private long[] chunkOf(int record) {
+        return records[record >>> CHUNK_BITS];
+    }
+
+    private static int offsetOf(int record) {
+        return (record & CHUNK_MASK) * FIELDS;
+    }
+
+    private long stampAt(int record) {
+        return chunkOf(record)[offsetOf(record) + STAMP];
+    }
+
+    private long metaAt(int record) {
+        return (long) LONGS.getVolatile(chunkOf(record), offsetOf(record) + META);
+    }
+
+    private ShipmentStatus statusAt(int record) {
+        return STATUSES[(int) (metaAt(record) & STATUS_MASK)];
+    }
+
+    private boolean compareAndSetStatus(int record, ShipmentStatus expected, ShipmentStatus next) {
+        long[] chunk = chunkOf(record);
+        int i = offsetOf(record) + META;
+        while (true) {
+            long meta = (long) LONGS.getVolatile(chunk, i);
+            if ((meta & STATUS_MASK) != expected.ordinal()) return false;
+            if (LONGS.compareAndSet(chunk, i, meta, (meta & ~STATUS_MASK) | next.ordinal())) return true;
+        }
+    }
+
+    private String idOf(int record) {
+        long[] chunk = chunkOf(record);
+        int offset = offsetOf(record);
+        long key = chunk[offset + KEY];
+        int scheme = (int) ((chunk[offset + META] >>> SCHEME_SHIFT) & 0x3);
+        if (scheme == TIME) return TimeOrderedIdAllocator.encode(key);
+        String digits = Long.toString(key);
+        return digits.length() >= 4 ? digits : "0000".substring(digits.length()) + digits;
+    }
+
+    // Valor anterior devolvido por put/remove: desligado da tabela, nao muda com o registro
+    private ShipmentInfo copyOf(int record, String id) {
+        ShipmentInfo view = view(record, id);
+        return view.withStatus(view.getStatus(), view.getFile());
+    }
+
+    private ShipmentInfo view(int record, String id) {
+        long meta = metaAt(record);
+        return new View(record, id, names[(int) (meta >>> NAME_SHIFT)], stampAt(record), STATUSES[(int) (meta & STATUS_MASK)]);
+    }
+
+    private Path fileOf(int record, String id, String filename) {
+        return switch ((int) ((metaAt(record) >>> FILE_SHIFT) & 0x3)) {
+            case FILE_DEFAULT -> defaultFile(id, filename);
+            case FILE_CUSTOM -> customFiles.get(record);
+            default -> null;
+        };
+    }
+
+    /**
+     * Encomenda lida da tabela; o status e sempre o do registro, nao uma copia. O Path so e
+     * montado quando pedido (RETR), nao em cada STAT ou linha do LIST.
+     */
+    private final class View extends ShipmentInfo {
+        private final int record;
+
+        View(int record, String id, String filename, long timestamp, ShipmentStatus status) {
+            super(id, filename, timestamp, status, null);
+            this.record = record;
+        }
+
+        @Override
+        public ShipmentStatus getStatus() {
+            return statusAt(record);
+        }
+
+        @Override
+        public Path getFile() {
+            return fileOf(record, getId(), getFilename());
+        }
+
+        @Override
+        public boolean compareAndSetStatus(ShipmentStatus expected, ShipmentStatus next) {
+            return PackedShipmentTable.this.compareAndSetStatus(record, expected, next);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof View view && view.table() == table() && view.record == record;
+        }
+
+        @Override
+        public int hashCode() {
+            return record;
+        }
+
+        private PackedShipmentTable table() {
+            return PackedShipmentTable.this;
+        }
+    }
+
+    // ---- ordem temporal ----
+
+    private int compareRecords(int a, int b) {
+        int byTime = Long.compare(stampAt(a), stampAt(b));
+        return byTime != 0 ? byTime : idOf(a).compareTo(idOf(b));
+    }
+
+    private int compareTo(int record, long epochNanos, String id) {
+        int byTime = Long.compare(stampAt(record), epochNanos);
+        return byTime != 0 ? byTime : idOf(record).compareTo(id);
+    }
+
+    // Primeira posicao cujo registro nao e menor que (epochNanos, id)
+    private int lowerBound(Order snapshot, long epochNanos, String id) {
+        int low = 0;
+        int high = snapshot.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareTo(snapshot.get(mid), epochNanos, id) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private void orderInsert(int record) {
+        Order current = order;
+        int n = current.size();
+        if (n == 0 || compareRecords(current.get(n - 1), record) <= 0) {
+            order = appendTo(current, record);
+        } else if (timeline == null) {
+            sorted = false;
+            order = appendTo(current, record);
+        } else {
+            // Uploads simultaneos chegam quase em ordem: a copia fica restrita aos blocos do fim
+            int low = 0;
+            int high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareRecords(current.get(mid), record) <= 0) low = mid + 1;
+                else high = mid;
+            }
+            order = shifted(current, low, record);
+        }
+    }
+
+    private void orderRemove(int record) {
+        Order current = order;
+        int position = -1;
+        if (sorted) {
+            int low = lowerBound(current, stampAt(record), idOf(record));
+            if (low < current.size() && current.get(low) == record) position = low;
+        } else {
+            for (int i = 0; i < current.size(); i++) {
+                if (current.get(i) == record) {
+                    position = i;
+                    break;
+                }
+            }
+        }
+        if (position >= 0) order = shifted(current, position, -1);
+    }
+
+    // Escreve alem do tamanho das instancias existentes: quem ja le a ordem nao ve a mudanca
+    private static Order appendTo(Order current, int record) {
+        int n = current.size();
+        int[][] chunks = current.chunks();
+        if (n >>> CHUNK_BITS == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = new int[CHUNK];
+        }
+        chunks[n >>> CHUNK_BITS][n & CHUNK_MASK] = record;
+        return new Order(chunks, n + 1);
+    }
+
+    /**
+     * Nova ordem com {@code record} inserido em {@code position} ou, com {@code record < 0}, sem o
+     * elemento dessa posicao. Copia apenas os blocos a partir da posicao; os anteriores sao
+     * compartilhados com a ordem atual.
+     */
+    private static Order shifted(Order current, int position, int record) {
+        int n = current.size();
+        int newSize = record >= 0 ? n + 1 : n - 1;
+        int chunkCount = (newSize + CHUNK - 1) >>> CHUNK_BITS;
+        int[][] chunks = Arrays.copyOf(current.chunks(), Math.max(chunkCount, 1));
+        int first = position >>> CHUNK_BITS;
+        for (int c = first; c < chunkCount; c++) chunks[c] = new int[CHUNK];
+        for (int i = first << CHUNK_BITS; i < newSize; i++) {
+            int value;
+            if (i < position) value = current.get(i);
+            else if (record >= 0) value = i == position ? record : current.get(i - 1);
+            else value = current.get(i + 1);
+            chunks[i >>> CHUNK_BITS][i & CHUNK_MASK] = value;
+        }
+        return new Order(chunks, newSize);
+    }
+
+    private void sortOrder() {
+        Order current = order;
+        int n = current.size();
+        int[] records = new int[n];
+        for (int i = 0; i < n; i++) records[i] = current.get(i);
+        mergeSort(records, new int[n], 0, n);
+        Order sortedOrder = new Order(new int[0][], 0);
+        for (int record : records) sortedOrder = appendTo(sortedOrder, record);
+        order = sortedOrder;
+    }
+
+    private void mergeSort(int[] records, int[] buffer, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(records, buffer, from, mid);
+        mergeSort(records, buffer, mid, to);
+        if (compareRecords(records[mid - 1], records[mid]) <= 0) return;
+        System.arraycopy(records, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && compareRecords(buffer[left], buffer[right]) <= 0)) records[i] = buffer[left++];
+            else records[i] = buffer[right++];
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, ShipmentInfo>> {
+        private final Order snapshot;
+        private final Iterator<Map.Entry<String, ShipmentInfo>> rest;
+        private int position;
+        private String lastKey;
+
+        EntryIterator(Order snapshot, Iterator<Map.Entry<String, ShipmentInfo>> rest) {
+            this.snapshot = snapshot;
+            this.rest = rest;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < snapshot.size() || rest.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, ShipmentInfo> next() {
+            if (position < snapshot.size()) {
+                int record = snapshot.get(position++);
+                lastKey = idOf(record);
+                return new RecordEntry(record, lastKey);
+            }
+            Map.Entry<String, ShipmentInfo> entry = rest.next();
+            lastKey = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) throw new IllegalStateException();
+            PackedShipmentTable.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    // O ShipmentInfo so e montado se pedido: keySet() (ex.: semear o alocador de IDs) nao cria visoes
+    private final class RecordEntry implements Map.Entry<String, ShipmentInfo> {
+        private final int record;
+        private final String id;
+
+        RecordEntry(int record, String id) {
+            this.record = record;
+            this.id = id;
+        }
+
+        @Override
+        public String getKey() {
+            return id;
+        }
+
+        @Override
+        public ShipmentInfo getValue() {
+            return view(record, id);
+        }
+
+        @Override
+        public ShipmentInfo setValue(ShipmentInfo value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** LIST direto da ordem primitiva: so as linhas enviadas viram objetos. */
+    private final class Timeline implements ShipmentTimeline {
+        // A tabela ja mantem a ordem e o status de cada registro
+        @Override
+        public void add(ShipmentInfo info) {
+        }
+
+        @Override
+        public void statusChanged(ShipmentInfo info, ShipmentStatus previousStatus) {
+        }
+
+        @Override
+        public Iterable<Map.Entry<Key, ShipmentInfo>> page(ShipmentStatus status, Key after, LocalDateTime since) {
+            Order snapshot = order;
+            long sinceNanos = since == null ? Long.MIN_VALUE : ShipmentInfo.toEpochNanos(since);
+            int start = after == null ? snapshot.size() - 1 : lowerBound(snapshot, after.epochNanos(), after.id()) - 1;
+            return () -> new Iterator<>() {
+                private int position = advance(start);
+
+                private int advance(int from) {
+                    int i = from;
+                    while (i >= 0) {
+                        int record = snapshot.get(i);
+                        if (stampAt(record) < sinceNanos) return -1;
+                        if (status == null || statusAt(record) == status) return i;
+                        i--;
+                    }
+                    return -1;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return position >= 0;
+                }
+
+                @Override
+                public Map.Entry<Key, ShipmentInfo> next() {
+                    if (position < 0) throw new NoSuchElementException();
+                    int record = snapshot.get(position);
+                    position = advance(position - 1);
+                    String id = idOf(record);
+                    return Map.entry(new Key(stampAt(record), id), view(record, id));
+                }
+            };
+        }
+    }
+}
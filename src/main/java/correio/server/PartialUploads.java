@@ -0,0 +1,73 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads interrompidos que podem ser retomados com {@code REST <offset>} + {@code STOR <id>}.
+ * O ID de rastreio ja reservado no STOR original serve de token: os bytes recebidos ficam em
+ * {@code uploads/.incoming/<id>.part} ate o envio terminar. Ficam so em memoria (um reinicio
+ * descarta o diretorio .incoming) e expiram depois de {@link #TTL_MILLIS} sem atividade.
+ */
+public class PartialUploads {
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    /** Upload pendente: nome original do arquivo e momento da ultima interrupcao. */
+    public record Entry(String id, String filename, long interruptedAtMillis) {}
+
+    private final Path incomingDir;
+    private final ConcurrentMap<String, Entry> pending = new ConcurrentHashMap<>();
+
+    public PartialUploads(Path uploadsDir) {
+        this.incomingDir = uploadsDir.resolve(DataTransfers.INCOMING_DIR);
+    }
+
+    /** Arquivo parcial do ID (existindo ou nao). */
+    public Path partFile(String id) {
+        return incomingDir.resolve(id + ".part");
+    }
+
+    /**
+     * Tamanho ja recebido de um upload pendente, ou -1 se o ID nao tem upload a retomar.
+     */
+    public long size(String id) throws IOException {
+        if (!pending.containsKey(id)) return -1;
+        Path part = partFile(id);
+        return Files.exists(part) ? Files.size(part) : 0;
+    }
+
+    /** Retira o upload da lista para uma sessao retoma-lo; null se outra sessao ja o pegou. */
+    public Entry claim(String id) {
+        return pending.remove(id);
+    }
+
+    /** Guarda um upload interrompido (ou devolve um retomado que caiu de novo). */
+    public void keep(String id, String filename) {
+        long now = System.currentTimeMillis();
+        pending.put(id, new Entry(id, filename, now));
+        expire(now);
+    }
+
+    public int count() {
+        return pending.size();
+    }
+
+    // Chamado a cada interrupcao: os pendentes sao poucos, uma varredura linear basta
+    private void expire(long now) {
+        for (Entry entry : pending.values()) {
+            if (now - entry.interruptedAtMillis() < TTL_MILLIS || !pending.remove(entry.id(), entry)) continue;
+            try {
+                Files.deleteIfExists(partFile(entry.id()));
+                ServerLog.info("[Dados] Upload parcial expirado descartado. ID: " + entry.id());
+            } catch (IOException e) {
+                ServerLog.warn("[Dados] Erro ao descartar upload parcial " + entry.id(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package correio.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Conexao de dados anunciada por um PASV e ainda nao aceita.
+ * Vem do {@link PassivePortPool} ou, sem pool configurado, de um listener efemero proprio.
+ */
+public interface PassiveConnection extends Closeable {
+
+    /** Porta anunciada na resposta 227. */
+    int port();
+
+    /** Aguarda o cliente conectar na porta anunciada. */
+    Socket accept() throws IOException;
+
+    /** Listener em porta aleatoria, aberto a cada PASV e fechado apos a transferencia (modo original). */
+    static PassiveConnection openEphemeral() throws IOException {
+        // ServerSocketChannel para que as conexoes aceitas tenham um SocketChannel (zero-copy)
+        ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress(0)); // 0 = porta aleatória livre
+        return new PassiveConnection() {
+            @Override
+            public int port() {
+                return listener.socket().getLocalPort();
+            }
+
+            @Override
+            public Socket accept() throws IOException {
+                return listener.socket().accept();
+            }
+
+            @Override
+            public void close() throws IOException {
+                listener.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,267 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Faixa fixa de portas passivas com listeners de longa duracao (ex.: 50000-50015),
+ * configurada por {@link ServerConfig#PASV_PORTS}. O PASV apenas reserva uma porta: nenhum
+ * socket e aberto ou fechado por transferencia, e o servidor pode ficar atras de um
+ * firewall com so essa faixa liberada.
+ *
+ * Uma unica thread aceita as conexoes de todas as portas e entrega cada uma a reserva
+ * pendente daquela porta com o mesmo endereco de origem. Como o endereco e a unica chave
+ * conhecida no PASV, cada porta aceita no maximo uma reserva pendente por endereco: varias
+ * sessoes atras do mesmo IP (NAT) recebem portas diferentes. Se todas estiverem ocupadas por
+ * esse IP, o PASV espera uma vaga, liberada assim que a conexao de dados pendente chega.
+ */
+public class PassivePortPool implements Closeable {
+    private final Port[] ports;
+    private final long acceptTimeoutMillis;
+    private final Selector selector;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private PassivePortPool(Port[] ports, long acceptTimeoutMillis, Selector selector) {
+        this.ports = ports;
+        this.acceptTimeoutMillis = acceptTimeoutMillis;
+        this.selector = selector;
+    }
+
+    /** @param range faixa no formato {@code inicio-fim} (ou uma unica porta) */
+    public static PassivePortPool open(String range, long acceptTimeoutMillis) throws IOException {
+        String[] bounds = range.split("-");
+        int first = Integer.parseInt(bounds[0].trim());
+        int last = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : first;
+        if (first < 1 || last > 65535 || last < first) {
+            throw new IllegalArgumentException("Faixa de portas passivas invalida: " + range);
+        }
+
+        Selector selector = Selector.open();
+        Port[] ports = new Port[last - first + 1];
+        try {
+            for (int i = 0; i < ports.length; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.bind(new InetSocketAddress(first + i));
+                channel.configureBlocking(false);
+                ports[i] = new Port(first + i, channel);
+                channel.register(selector, SelectionKey.OP_ACCEPT, ports[i]);
+            }
+        } catch (IOException e) {
+            for (Port p : ports) if (p != null) p.channel.close();
+            selector.close();
+            throw e;
+        }
+
+        PassivePortPool pool = new PassivePortPool(ports, acceptTimeoutMillis, selector);
+        Thread acceptor = new Thread(pool::acceptLoop, "ftp-pasv-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return pool;
+    }
+
+    /**
+     * Reserva uma porta para a proxima conexao de dados vinda de {@code client}.
+     *
+     * @throws SocketTimeoutException se nenhuma porta ficar livre para esse endereco a tempo
+     */
+    public PassiveConnection reserve(InetAddress client) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acceptTimeoutMillis);
+        while (true) {
+            int start = Math.floorMod(cursor.getAndIncrement(), ports.length);
+            for (int i = 0; i < ports.length; i++) {
+                Port candidate = ports[(start + i) % ports.length];
+                Reservation reservation = new Reservation(candidate, client);
+                if (candidate.pending.putIfAbsent(client, reservation) == null) {
+                    candidate.reservations.incrementAndGet();
+                    return reservation;
+                }
+            }
+            awaitFreeSlot(deadline);
+        }
+    }
+
+    private synchronized void awaitFreeSlot(long deadline) throws IOException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Todas as portas passivas estao reservadas para este endereco");
+        }
+        try {
+            wait(Math.min(remaining, 50)); // reavalia periodicamente mesmo sem notificacao
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private synchronized void slotFreed() {
+        notifyAll();
+    }
+
+    /** Quantidade de portas da faixa com alguma transferencia reservada ou em andamento. */
+    public int portsInUse() {
+        int inUse = 0;
+        for (Port p : ports) if (p.reservations.get() > 0) inUse++;
+        return inUse;
+    }
+
+    public int size() {
+        return ports.length;
+    }
+
+    public String describe() {
+        return ports[0].number + "-" + ports[ports.length - 1].number;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) ServerLog.error("Erro no aceite das portas passivas", e);
+                continue;
+            }
+            Iterator<SelectionKey> it;
+            try {
+                it = selector.selectedKeys().iterator();
+            } catch (ClosedSelectorException e) {
+                return;
+            }
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                Port port = (Port) key.attachment();
+                // Um erro em uma conexao nao pode derrubar a unica thread de aceite
+                while (running) {
+                    SocketChannel channel;
+                    try {
+                        channel = port.channel.accept();
+                    } catch (IOException e) {
+                        if (running) ServerLog.error("Erro no aceite da porta passiva " + port.number, e);
+                        break;
+                    }
+                    if (channel == null) break;
+                    try {
+                        dispatch(port, channel);
+                    } catch (IOException e) {
+                        ServerLog.error("Erro ao encaminhar conexao da porta passiva " + port.number, e);
+                        closeQuietly(channel);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void dispatch(Port port, SocketChannel channel) throws IOException {
+        InetAddress remote = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+        Reservation match = port.pending.remove(remote);
+        if (match != null) slotFreed();
+
+        if (match == null || !match.complete(channel)) {
+            ServerLog.warn("[Dados] Conexao inesperada na porta passiva " + port.number + " vinda de " + remote.getHostAddress());
+            channel.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        for (Port p : ports) p.channel.close();
+        selector.close();
+    }
+
+    private static final class Port {
+        final int number;
+        final ServerSocketChannel channel;
+        // Reserva aguardando conexao, por endereco do cliente (no maximo uma por endereco)
+        final ConcurrentHashMap<InetAddress, Reservation> pending = new ConcurrentHashMap<>();
+        final AtomicInteger reservations = new AtomicInteger();
+
+        Port(int number, ServerSocketChannel channel) {
+            this.number = number;
+            this.channel = channel;
+        }
+    }
+
+    private final class Reservation implements PassiveConnection {
+        private final Port port;
+        private final InetAddress client;
+        private final CompletableFuture<SocketChannel> connection = new CompletableFuture<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean handedOff;
+
+        Reservation(Port port, InetAddress client) {
+            this.port = port;
+            this.client = client;
+        }
+
+        boolean complete(SocketChannel channel) throws IOException {
+            channel.configureBlocking(true);
+            return connection.complete(channel);
+        }
+
+        @Override
+        public int port() {
+            return port.number;
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            try {
+                SocketChannel channel = connection.get(acceptTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (channel == null) throw new IOException("Reserva passiva ja encerrada");
+                handedOff = true;
+                return channel.socket();
+            } catch (TimeoutException e) {
+                throw new SocketTimeoutException("Cliente nao conectou na porta passiva " + port.number);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!released.compareAndSet(false, true)) return;
+            if (port.pending.remove(client, this)) slotFreed();
+            port.reservations.decrementAndGet();
+            // Cancela a reserva; se o cliente chegou a conectar mas a conexao nunca foi usada, fecha-a
+            if (!connection.complete(null) && !handedOff) {
+                SocketChannel channel = connection.getNow(null);
+                if (channel != null) channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package correio.server;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IDs numericos sequenciais, com pelo menos 4 digitos ("0042", "10571"), no mesmo formato
+ * dos IDs antigos. A sequencia continua a partir do maior ID numerico conhecido.
+ */
+public class SequenceIdAllocator implements ShipmentIdAllocator {
+    // IDs com mais digitos que isso nao cabem em um long e nunca foram gerados por esta sequencia
+    private static final int MAX_DIGITS = 18;
+
+    private final AtomicLong next;
+
+    public SequenceIdAllocator(long first) {
+        this.next = new AtomicLong(first);
+    }
+
+    public static SequenceIdAllocator seededFrom(Collection<String> existingIds) {
+        long max = 0;
+        for (String id : existingIds) {
+            if (isNumeric(id)) max = Math.max(max, Long.parseLong(id));
+        }
+        return new SequenceIdAllocator(max + 1);
+    }
+
+    static boolean isNumeric(String id) {
+        if (id.isEmpty() || id.length() > MAX_DIGITS) return false;
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String nextId() {
+        return String.format("%04d", next.getAndIncrement());
+    }
+}
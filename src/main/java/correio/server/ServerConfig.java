@@ -0,0 +1,190 @@
+package correio.server;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Configuracao do servidor. As chaves sao as mesmas propriedades {@code correio.*} ja usadas
+ * com {@code -D}; cada valor e procurado, nesta ordem, nas opcoes de linha de comando, no
+ * arquivo passado em {@code --config}, nas propriedades de sistema e por fim no padrao.
+ *
+ * Instancias sao imutaveis: {@link #with} devolve uma copia, o que permite a testes em
+ * processo subir varios servidores com portas e diretorios diferentes.
+ */
+public final class ServerConfig {
+    public static final String PORT = "correio.port";
+    public static final String DIR = "correio.dir";
+    public static final String ENGINE = "correio.engine";
+    public static final String EXECUTOR = "correio.executor";
+    public static final String NIO_THREADS = "correio.nio.threads";
+    public static final String PASV_PORTS = "correio.pasv.ports";
+    public static final String PASV_TIMEOUT = "correio.pasv.timeoutMillis";
+    public static final String SNAPSHOT_EVERY = "correio.journal.snapshotEvery";
+    public static final String FSYNC = "correio.journal.fsync";
+    public static final String IDS = "correio.ids";
+    public static final String IDS_NODE = "correio.ids.node";
+    public static final String METRICS_PORT = "correio.metrics.port";
+    public static final String TRACKING = "correio.tracking";
+    public static final String LOG_LEVEL = "correio.log.level";
+    public static final String LOG_FILE = "correio.log.file";
+
+    /** Opcoes curtas de linha de comando e a chave que cada uma define. */
+    private static final Map<String, String> FLAGS = Map.ofEntries(
+            Map.entry("--port", PORT),
+            Map.entry("--dir", DIR),
+            Map.entry("--engine", ENGINE),
+            Map.entry("--executor", EXECUTOR),
+            Map.entry("--nio-threads", NIO_THREADS),
+            Map.entry("--pasv-ports", PASV_PORTS),
+            Map.entry("--ids", IDS),
+            Map.entry("--tracking", TRACKING),
+            Map.entry("--metrics-port", METRICS_PORT),
+            Map.entry("--log-level", LOG_LEVEL),
+            Map.entry("--log-file", LOG_FILE));
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Uso: HeadlessServer [opcoes]",
+            "  --config ARQUIVO     arquivo .properties com chaves correio.*",
+            "  --port N             porta de controle (padrao 2121; 0 = qualquer porta livre)",
+            "  --dir CAMINHO        diretorio de armazenamento (padrao uploads)",
+            "  --engine TIPO        blocking | nio",
+            "  --executor TIPO      platform | virtual",
+            "  --nio-threads N      event loops do motor nio",
+            "  --pasv-ports A-B     faixa fixa de portas passivas",
+            "  --ids TIPO           sequence | time",
+            "  --tracking TIPO      map | packed (tabela compacta para dezenas de milhoes de encomendas)",
+            "  --metrics-port N     endpoint HTTP /metrics em 127.0.0.1 (padrao desligado; 0 = porta livre)",
+            "  --log-level NIVEL    DEBUG | INFO | WARN | ERROR",
+            "  --log-file ARQUIVO   arquivo de log rotativo",
+            "  -Dchave=valor        qualquer outra chave correio.*");
+
+    private final Properties values;
+
+    private ServerConfig(Properties values) {
+        this.values = values;
+    }
+
+    /** Apenas propriedades de sistema e padroes. */
+    public static ServerConfig defaults() {
+        return new ServerConfig(new Properties());
+    }
+
+    public static ServerConfig fromProperties(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return new ServerConfig(copy);
+    }
+
+    /**
+     * Interpreta a linha de comando. Opcoes aceitam {@code --port 2121} ou {@code --port=2121}.
+     *
+     * @throws IllegalArgumentException para opcoes desconhecidas ou sem valor
+     */
+    public static ServerConfig fromArgs(String[] args) throws IOException {
+        Properties file = new Properties();
+        Properties flags = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-D")) {
+                int eq = arg.indexOf('=');
+                if (eq < 3) throw new IllegalArgumentException("Opcao invalida: " + arg);
+                flags.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+                continue;
+            }
+            String name = arg;
+            String value = null;
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 0) {
+                name = arg.substring(0, eq);
+                value = arg.substring(eq + 1);
+            }
+            if (!name.equals("--config") && !FLAGS.containsKey(name)) {
+                throw new IllegalArgumentException("Opcao desconhecida: " + arg);
+            }
+            if (value == null) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Opcao sem valor: " + arg);
+                value = args[++i];
+            }
+            if (name.equals("--config")) {
+                try (Reader reader = Files.newBufferedReader(Paths.get(value), StandardCharsets.UTF_8)) {
+                    file.load(reader);
+                }
+            } else {
+                flags.setProperty(FLAGS.get(name), value);
+            }
+        }
+        file.putAll(flags);
+        return new ServerConfig(file);
+    }
+
+    /** Copia desta configuracao com uma chave alterada. */
+    public ServerConfig with(String key, String value) {
+        Properties copy = new Properties();
+        copy.putAll(values);
+        copy.setProperty(key, value);
+        return new ServerConfig(copy);
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = values.getProperty(key);
+        return value != null ? value.trim() : System.getProperty(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor invalido para " + key + ": " + value);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor invalido para " + key + ": " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public int port() { return getInt(PORT, 2121); }
+    public Path uploadsDir() { return Paths.get(get(DIR, "uploads")); }
+    public String engine() { return get(ENGINE, "blocking"); }
+    public ExecutorMode executorMode() { return ExecutorMode.parse(get(EXECUTOR, "platform")); }
+    public int nioThreads() { return getInt(NIO_THREADS, NioServerEngine.defaultLoopCount()); }
+    /** Faixa de portas passivas, ou string vazia para portas efemeras. */
+    public String passivePorts() { return get(PASV_PORTS, "").trim(); }
+    public long passiveTimeoutMillis() { return getLong(PASV_TIMEOUT, 30_000); }
+    public int journalSnapshotEvery() { return getInt(SNAPSHOT_EVERY, 10_000); }
+    public boolean journalFsync() { return getBoolean(FSYNC, false); }
+    public String idScheme() { return get(IDS, "sequence"); }
+    public int idNode() { return getInt(IDS_NODE, 0); }
+    public String trackingStore() { return get(TRACKING, "map"); }
+    /** Porta do endpoint de metricas no loopback, ou -1 (padrao) para nao abri-lo. */
+    public int metricsPort() { return getInt(METRICS_PORT, -1); }
+
+    /**
+     * O log ({@code correio.log.*}) e o envio zero-copy ({@code correio.zerocopy}) valem para o
+     * processo inteiro e leem as propriedades de sistema na primeira vez que sao usados. Copia
+     * essas chaves desta configuracao para la; chame antes de iniciar o servidor ou logar.
+     */
+    public void applyProcessWideSettings() {
+        for (String key : values.stringPropertyNames()) {
+            if (key.startsWith("correio.log.") || key.equals("correio.zerocopy")) {
+                System.setProperty(key, values.getProperty(key).trim());
+            }
+        }
+    }
+}
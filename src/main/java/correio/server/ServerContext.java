@@ -0,0 +1,50 @@
+package correio.server;
+
+import correio.server.metrics.ServerMetrics;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Estado compartilhado por todas as sessoes: diretorio de armazenamento, mapa de
+ * rastreio em memoria e seu indice temporal, o diario que o torna persistente, o gerador
+ * de IDs, os uploads interrompidos que podem ser retomados, o armazenamento deduplicado dos
+ * conteudos, as metricas e o pool de portas passivas (opcional).
+ */
+public class ServerContext {
+    private final Path uploadsDir;
+    private final ConcurrentMap<String, ShipmentInfo> tracking;
+    private final ShipmentTimeline timeline;
+    private final ShipmentJournal journal;
+    private final ShipmentIdAllocator idAllocator;
+    private final PassivePortPool passivePorts;
+    private final PartialUploads partialUploads;
+    private final BlobStore blobStore;
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    public ServerContext(Path uploadsDir, ConcurrentMap<String, ShipmentInfo> tracking, ShipmentJournal journal,
+                         ShipmentIdAllocator idAllocator, PassivePortPool passivePorts) {
+        this.uploadsDir = uploadsDir;
+        this.tracking = tracking;
+        this.timeline = ShipmentTimeline.create(tracking);
+        this.journal = journal;
+        this.idAllocator = idAllocator;
+        this.passivePorts = passivePorts;
+        this.partialUploads = new PartialUploads(uploadsDir);
+        this.blobStore = new BlobStore(uploadsDir);
+        metrics.gauge("correio_shipments", "", "Encomendas no rastreio.", tracking::size);
+        metrics.gauge("correio_partial_uploads", "", "Uploads interrompidos aguardando retomada.", partialUploads::count);
+        metrics.gauge("correio_blobs", "", "Conteudos distintos no armazenamento deduplicado.", blobStore::count);
+    }
+
+    public Path getUploadsDir() { return uploadsDir; }
+    public ConcurrentMap<String, ShipmentInfo> getTracking() { return tracking; }
+    public ShipmentTimeline getTimeline() { return timeline; }
+    public ShipmentJournal getJournal() { return journal; }
+    public ShipmentIdAllocator getIdAllocator() { return idAllocator; }
+    public PartialUploads getPartialUploads() { return partialUploads; }
+    public BlobStore getBlobStore() { return blobStore; }
+    public ServerMetrics getMetrics() { return metrics; }
+    /** Pool de portas passivas, ou null quando cada PASV abre uma porta efemera. */
+    public PassivePortPool getPassivePorts() { return passivePorts; }
+}
@@ -0,0 +1,35 @@
+package correio.server;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Motor responsavel por aceitar e atender as conexoes de controle do servidor.
+ * O motor e escolhido na inicializacao pela propriedade de sistema {@code correio.engine}:
+ * {@code blocking} (padrao, uma thread por conexao) ou {@code nio} (event loops com Selector).
+ * Em ambos, o {@link ExecutorMode} define se sessoes e transferencias usam threads de
+ * plataforma ou threads virtuais.
+ */
+public interface ServerEngine {
+
+    /** Abre a porta de controle e comeca a aceitar conexoes. Retorna sem bloquear. */
+    void start() throws IOException;
+
+    /** Para de aceitar conexoes e encerra as sessoes em andamento. */
+    void stop();
+
+    /** Nome curto do motor, usado nos logs. */
+    String name();
+
+    /** Porta de controle efetivamente aberta (util quando o motor foi criado com a porta 0). */
+    int port();
+
+    /** @param nioThreads quantidade de event loops, usada apenas pelo motor {@code nio} */
+    static ServerEngine create(String type, int port, ServerContext context, ExecutorMode executorMode, int nioThreads) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "blocking": return new BlockingServerEngine(port, context, executorMode);
+            case "nio": return new NioServerEngine(port, context, nioThreads, executorMode);
+            default: throw new IllegalArgumentException("Motor de servidor desconhecido: " + type);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package correio.server;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Gera os IDs de rastreio das novas encomendas. As implementacoes sao lock-free e
+ * recebem os IDs ja existentes (vindos do diario) para nunca repetir um ID apos reiniciar.
+ * Escolhida por {@link ServerConfig#IDS}: {@code sequence} (padrao) ou {@code time}.
+ */
+public interface ShipmentIdAllocator {
+
+    String nextId();
+
+    /** @param node numero do no, usado apenas pelo alocador {@code time} */
+    static ShipmentIdAllocator create(String type, int node, Collection<String> existingIds) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "sequence": return SequenceIdAllocator.seededFrom(existingIds);
+            case "time": return TimeOrderedIdAllocator.seededFrom(existingIds, node);
+            default: throw new IllegalArgumentException("Alocador de IDs desconhecido: " + type);
+        }
+    }
+}
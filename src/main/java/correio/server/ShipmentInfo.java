@@ -1,37 +1,122 @@
 package correio.server;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
+/**
+ * Metadados de uma encomenda. O status vive aqui (e no diario), nao no nome do arquivo: o
+ * arquivo em uploads/ tem nome fixo desde o upload, e a mudanca de status e um compare-and-set
+ * em memoria, sem nenhuma operacao no sistema de arquivos.
+ *
+ * Todos os campos sao finais exceto o status, lido com uma unica leitura volatil: LIST e STAT
+ * nunca travam e sempre veem um estado coerente. O horario do envio fica como um long e so vira
+ * texto (ou {@link LocalDateTime}) quando e exibido.
+ */
 public class ShipmentInfo {
+    private static final VarHandle STATUS;
+
+    static {
+        try {
+            STATUS = MethodHandles.lookup().findVarHandle(ShipmentInfo.class, "status", ShipmentStatus.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final String id;
     private final String filename;
-    private final LocalDateTime timestamp;
-    private String status;
+    // Horario local do servidor em nanos desde 1970-01-01T00:00 (sem fuso), como no diario
+    private final long timestamp;
+    private volatile ShipmentStatus status;
+    // Arquivo fisico em uploads/: indice ID -> Path mantido em memoria, evita varrer o diretorio
+    private final Path file;
 
     // Construtor original, usado para novas encomendas
-    public ShipmentInfo(String id, String filename) {
-        this.id = id;
-        this.filename = filename;
-        this.timestamp = LocalDateTime.now();
-        this.status = "ENVIADA";
+    public ShipmentInfo(String id, String filename, Path file) {
+        this(id, filename, LocalDateTime.now(), ShipmentStatus.ENVIADA, file);
     }
 
+    public ShipmentInfo(String id, String filename, LocalDateTime timestamp, ShipmentStatus status, Path file) {
+        this(id, filename, toEpochNanos(timestamp), status, file);
+    }
 
-    public ShipmentInfo(String id, String filename, LocalDateTime timestamp, String status) {
+    public ShipmentInfo(String id, String filename, long timestamp, ShipmentStatus status, Path file) {
         this.id = id;
         this.filename = filename;
         this.timestamp = timestamp;
         this.status = status;
+        this.file = file;
     }
 
-
     public String getId() { return id; }
     public String getFilename() { return filename; }
-    public LocalDateTime getTimestamp() { return timestamp; }
-    public synchronized String getStatus() { return status; }
-    public synchronized void setStatus(String status) { this.status = status; }
+    /** Horario do envio na escala de {@link #toEpochNanos}; chave de ordenacao do indice temporal. */
+    public long getTimestampNanos() { return timestamp; }
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(timestamp, 1_000_000_000L),
+                (int) Math.floorMod(timestamp, 1_000_000_000L), ZoneOffset.UTC);
+    }
+    public ShipmentStatus getStatus() { return status; }
+    public Path getFile() { return file; }
+
+    /**
+     * Troca o status para {@code next} se ele ainda for {@code expected}. Entre RETRs simultaneos
+     * da mesma encomenda so um vence, e apenas ele atualiza o indice e o diario.
+     */
+    public boolean compareAndSetStatus(ShipmentStatus expected, ShipmentStatus next) {
+        return STATUS.compareAndSet(this, expected, next);
+    }
+
+    /** Mesma encomenda com outro status; usado ao reaplicar o diario, antes de as sessoes existirem. */
+    ShipmentInfo withStatus(ShipmentStatus status, Path file) {
+        return new ShipmentInfo(id, filename, timestamp, status, file);
+    }
+
+    /**
+     * Converte o horario local em nanos desde 1970-01-01T00:00, satura fora da faixa
+     * representavel (~1677 a 2262) para que limites como "since" nao estourem.
+     */
+    public static long toEpochNanos(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) return Long.MAX_VALUE;
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L) return Long.MIN_VALUE;
+        return seconds * 1_000_000_000L + time.getNano();
+    }
+
+    /** Escreve o horario do envio como {@code yyyy-MM-dd HH:mm:ss}, sem criar objetos de data. */
+    public void appendTimestamp(StringBuilder out) {
+        long seconds = Math.floorDiv(timestamp, 1_000_000_000L);
+        long days = Math.floorDiv(seconds, 86_400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+        // Data civil a partir do dia da epoca (algoritmo "civil_from_days" de H. Hinnant)
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year >= 0 && year < 1000) out.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        out.append(year).append('-');
+        twoDigits(out, month).append('-');
+        twoDigits(out, day).append(' ');
+        twoDigits(out, secondOfDay / 3600).append(':');
+        twoDigits(out, secondOfDay / 60 % 60).append(':');
+        twoDigits(out, secondOfDay % 60);
+    }
+
+    private static StringBuilder twoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
     @Override
     public String toString() {
-        return id + ": " + filename + " (" + status + ")";
+        return id + ": " + filename + " (" + getStatus() + ")";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,333 @@
+package correio.server;
+
+import correio.server.log.ServerLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Diario persistente das encomendas. Toda criacao ou mudanca de status e anexada ao
+ * {@code journal.log}; periodicamente o estado inteiro e compactado em {@code snapshot.bin}
+ * e o log recomeca vazio. Na inicializacao basta ler o snapshot e reaplicar a cauda do log,
+ * sem listar o diretorio de uploads nem interpretar nomes de arquivo.
+ *
+ * Cada registro e gravado como {@code [tamanho][crc32][dados]}; um registro incompleto no
+ * fim do log (queda no meio da escrita) e descartado na recuperacao.
+ *
+ * O snapshot periodico nao trava quem grava: ao atingir {@code snapshotEvery} registros o log
+ * e renomeado para {@code journal.old}, um log novo comeca na hora e o snapshot e gravado por
+ * uma thread propria; {@code journal.old} so e apagado depois que o snapshot novo esta no lugar.
+ * Se o processo cair antes disso, a recuperacao le snapshot, {@code journal.old} e log, nessa ordem.
+ *
+ * Regra de uso: altere primeiro o estado em memoria e so depois registre no diario. Como
+ * os registros sao idempotentes, um snapshot feito entre as duas etapas nunca perde dados.
+ */
+public class ShipmentJournal implements Closeable {
+    public static final String DIR = ".journal";
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String SNAPSHOT_TMP = "snapshot.tmp";
+    private static final String LOG = "journal.log";
+    private static final String LOG_ROTATED = "journal.old";
+
+    private static final byte CREATED = 1;
+    private static final byte UPDATED = 2;
+
+    private final Path dir;
+    private final Path uploadsDir;
+    private final int snapshotEvery;
+    private final boolean fsync;
+
+    private Map<String, ShipmentInfo> tracking;
+    private FileChannel log;
+    private int recordsSinceSnapshot;
+    private boolean snapshotPending; // um snapshot em segundo plano ainda nao terminou
+    private volatile boolean closed;
+    // Um snapshot de cada vez grava o snapshot.tmp; adquirido depois do monitor do diario, nunca antes
+    private final Object snapshotLock = new Object();
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "correio-journal-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ShipmentJournal(Path uploadsDir, int snapshotEvery, boolean fsync) {
+        this.uploadsDir = uploadsDir;
+        this.dir = uploadsDir.resolve(DIR);
+        this.snapshotEvery = snapshotEvery;
+        this.fsync = fsync;
+    }
+
+    /** Indica se ja existe um diario; caso contrario o servidor precisa migrar os arquivos antigos. */
+    public boolean exists() {
+        return Files.exists(dir.resolve(SNAPSHOT)) || Files.exists(dir.resolve(LOG));
+    }
+
+    /**
+     * Reconstroi o mapa a partir do snapshot e da cauda do log.
+     *
+     * @return quantidade de registros do log reaplicados sobre o snapshot
+     */
+    public int recover(Map<String, ShipmentInfo> target) throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            replay(Files.readAllBytes(snapshot), target);
+        }
+        int replayed = 0;
+        Path rotated = dir.resolve(LOG_ROTATED);
+        if (Files.exists(rotated)) {
+            // Snapshot em segundo plano interrompido: o log anterior ainda vale
+            byte[] bytes = Files.readAllBytes(rotated);
+            int valid = replay(bytes, target);
+            if (valid < bytes.length) {
+                ServerLog.warn("Diario: descartando " + (bytes.length - valid) + " byte(s) de registro incompleto em " + LOG_ROTATED + ".");
+            }
+            replayed = countRecords(bytes, valid);
+        }
+        Path logFile = dir.resolve(LOG);
+        if (!Files.exists(logFile)) return replayed;
+
+        byte[] bytes = Files.readAllBytes(logFile);
+        int valid = replay(bytes, target);
+        if (valid < bytes.length) {
+            ServerLog.warn("Diario: descartando " + (bytes.length - valid) + " byte(s) de registro incompleto.");
+            try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+            }
+        }
+        return replayed + countRecords(bytes, valid);
+    }
+
+    /** Abre o log para escrita. Os snapshots periodicos sao tirados de {@code tracking}. */
+    public synchronized void open(Map<String, ShipmentInfo> tracking) throws IOException {
+        this.tracking = tracking;
+        Files.createDirectories(dir);
+        log = openLog();
+        // Sobrou um journal.old: o estado ja recuperado vira um snapshot e ele pode ser apagado
+        if (Files.exists(dir.resolve(LOG_ROTATED))) snapshot();
+    }
+
+    public synchronized void recordCreated(ShipmentInfo info) throws IOException {
+        append(encodeCreated(info));
+    }
+
+    public synchronized void recordUpdated(ShipmentInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(UPDATED);
+        out.writeUTF(info.getId());
+        out.writeUTF(info.getStatus().name());
+        out.writeUTF(storedName(info));
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Grava o estado atual inteiro em um novo snapshot e esvazia o log, bloqueando as escritas
+     * no diario ate terminar. Usado na migracao e no encerramento; os snapshots periodicos sao
+     * gravados em segundo plano.
+     */
+    public synchronized void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            int count = writeSnapshot();
+            log.truncate(0);
+            if (fsync) log.force(true);
+            Files.deleteIfExists(dir.resolve(LOG_ROTATED));
+            recordsSinceSnapshot = 0;
+            ServerLog.info("Diario: snapshot com " + count + " encomenda(s) gravado.");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true; // um snapshot em segundo plano ainda na fila nao roda mais
+        snapshotter.shutdown();
+        if (log == null) return;
+        snapshot();
+        log.close();
+        log = null;
+    }
+
+    private void append(byte[] payload) throws IOException {
+        writeFully(log, frame(payload));
+        if (fsync) log.force(false);
+        if (++recordsSinceSnapshot >= snapshotEvery) {
+            scheduleSnapshot();
+        }
+    }
+
+    // Chamado com o monitor do diario: so troca de log, o snapshot e gravado pela outra thread
+    private void scheduleSnapshot() throws IOException {
+        recordsSinceSnapshot = 0;
+        if (snapshotPending) return; // o log continua crescendo ate a proxima vez
+        Path rotated = dir.resolve(LOG_ROTATED);
+        // Se um snapshot anterior falhou, journal.old ainda guarda registros: o log atual fica
+        // como esta e o proximo snapshot cobre os dois
+        if (!Files.exists(rotated)) {
+            log.close();
+            Files.move(dir.resolve(LOG), rotated, StandardCopyOption.ATOMIC_MOVE);
+            log = openLog();
+        }
+        // Marcado so depois de aceito: a tarefa so limpa a marca com o monitor, que ainda e nosso
+        snapshotter.execute(this::backgroundSnapshot);
+        snapshotPending = true;
+    }
+
+    // Roda sem o monitor do diario: STOR e RETR continuam registrando enquanto o snapshot e gravado
+    private void backgroundSnapshot() {
+        try {
+            synchronized (snapshotLock) {
+                if (closed) return; // o close ja gravou o snapshot final
+                long start = System.nanoTime();
+                int count = writeSnapshot();
+                // Tudo o que estava no journal.old ja estava em memoria quando o snapshot comecou
+                Files.deleteIfExists(dir.resolve(LOG_ROTATED));
+                ServerLog.info("Diario: snapshot com " + count + " encomenda(s) gravado em segundo plano em "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            }
+        } catch (IOException | RuntimeException e) {
+            ServerLog.error("Diario: falha no snapshot; journal.old e o log continuam valendo", e);
+        } finally {
+            synchronized (this) {
+                snapshotPending = false;
+            }
+        }
+    }
+
+    // Chamado com snapshotLock; le o mapa de rastreio enquanto ele muda, como no snapshot sincrono
+    private int writeSnapshot() throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_TMP);
+        int count = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+            for (ShipmentInfo info : tracking.values()) {
+                batch.write(frame(encodeCreated(info)));
+                count++;
+                if (batch.size() >= 64 * 1024) {
+                    writeFully(out, batch.toByteArray());
+                    batch.reset();
+                }
+            }
+            writeFully(out, batch.toByteArray());
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private byte[] encodeCreated(ShipmentInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CREATED);
+        out.writeUTF(info.getId());
+        out.writeUTF(info.getFilename());
+        out.writeLong(Math.floorDiv(info.getTimestampNanos(), 1_000_000_000L));
+        out.writeInt((int) Math.floorMod(info.getTimestampNanos(), 1_000_000_000L));
+        out.writeUTF(info.getStatus().name());
+        out.writeUTF(storedName(info));
+        return bytes.toByteArray();
+    }
+
+    private static String storedName(ShipmentInfo info) {
+        Path file = info.getFile();
+        return file == null ? "" : file.getFileName().toString();
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return buf.array();
+    }
+
+    private static void writeFully(FileChannel ch, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    /**
+     * Aplica os registros em sequencia e retorna quantos bytes formavam registros validos.
+     */
+    private int replay(byte[] bytes, Map<String, ShipmentInfo> target) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= 8) {
+            int start = buf.position();
+            int length = buf.getInt();
+            int expected = buf.getInt();
+            if (length < 0 || length > buf.remaining()) return start;
+            crc.reset();
+            crc.update(bytes, buf.position(), length);
+            if ((int) crc.getValue() != expected) return start;
+
+            apply(new DataInputStream(new ByteArrayInputStream(bytes, buf.position(), length)), target);
+            buf.position(buf.position() + length);
+        }
+        return buf.position();
+    }
+
+    private static int countRecords(byte[] bytes, int valid) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, valid);
+        int count = 0;
+        while (buf.remaining() >= 8) {
+            int length = buf.getInt();
+            buf.position(buf.position() + 4 + length);
+            count++;
+        }
+        return count;
+    }
+
+    private void apply(DataInputStream in, Map<String, ShipmentInfo> target) throws IOException {
+        byte type = in.readByte();
+        String id = in.readUTF();
+        if (type == CREATED) {
+            String filename = in.readUTF();
+            long timestamp = toEpochNanos(in.readLong(), in.readInt());
+            ShipmentStatus status = readStatus(in);
+            Path file = resolve(in.readUTF());
+            target.put(id, new ShipmentInfo(id, filename, timestamp, status, file));
+        } else if (type == UPDATED) {
+            ShipmentStatus status = readStatus(in);
+            Path file = resolve(in.readUTF());
+            // Diarios antigos registram o arquivo renomeado a cada entrega; os novos repetem o mesmo nome
+            target.computeIfPresent(id, (key, info) -> info.withStatus(status, file));
+        } else {
+            throw new IOException("Tipo de registro desconhecido no diario: " + type);
+        }
+    }
+
+    private static ShipmentStatus readStatus(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        ShipmentStatus status = ShipmentStatus.find(name);
+        if (status == null) throw new IOException("Status desconhecido no diario: " + name);
+        return status;
+    }
+
+    // Mesma escala (e saturacao) de ShipmentInfo.toEpochNanos, sem passar por LocalDateTime
+    private static long toEpochNanos(long seconds, int nanos) {
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) return Long.MAX_VALUE;
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L) return Long.MIN_VALUE;
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    private Path resolve(String storedName) {
+        return storedName.isEmpty() ? null : uploadsDir.resolve(storedName);
+    }
+}
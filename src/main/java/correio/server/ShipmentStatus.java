@@ -0,0 +1,19 @@
+package correio.server;
+
+/** Status de uma encomenda. O nome de cada constante e o texto usado no protocolo e no diario. */
+public enum ShipmentStatus {
+    ENVIADA,
+    ENTREGUE;
+
+    private static final ShipmentStatus[] VALUES = values();
+
+    /**
+     * Status pelo nome (sem diferenciar maiusculas), ou null se nao existir.
+     */
+    public static ShipmentStatus find(String name) {
+        for (ShipmentStatus status : VALUES) {
+            if (status.name().equalsIgnoreCase(name)) return status;
+        }
+        return null;
+    }
+}
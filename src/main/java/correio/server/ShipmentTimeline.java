@@ -0,0 +1,63 @@
+package correio.server;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indice secundario das encomendas ordenado da mais nova para a mais antiga, usado pelo LIST.
+ * A implementacao acompanha o mapa de rastreio: {@link SkipListTimeline} para o mapa padrao e
+ * a ordem primitiva do proprio {@link PackedShipmentTable} quando ele e usado.
+ */
+public interface ShipmentTimeline {
+
+    /** Chave de ordenacao: instante do envio (desc) e ID (desc) para desempatar. */
+    record Key(long epochNanos, String id) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byTime = Long.compare(other.epochNanos, epochNanos);
+            return byTime != 0 ? byTime : other.id.compareTo(id);
+        }
+
+        /** Forma textual usada como cursor de paginacao no LIST ("epochNanos:id"). */
+        @Override
+        public String toString() {
+            return epochNanos + ":" + id;
+        }
+
+        public static Key parse(String cursor) {
+            int sep = cursor.indexOf(':');
+            if (sep <= 0) throw new IllegalArgumentException("Cursor invalido: " + cursor);
+            return new Key(Long.parseLong(cursor.substring(0, sep)), cursor.substring(sep + 1));
+        }
+
+        /** Limite usado para "since": ordena antes de qualquer encomenda daquele instante. */
+        static Key atOrAfter(LocalDateTime time) {
+            return new Key(ShipmentInfo.toEpochNanos(time), "");
+        }
+    }
+
+    /** Indice adequado ao mapa de rastreio, ja com as encomendas existentes. */
+    static ShipmentTimeline create(ConcurrentMap<String, ShipmentInfo> tracking) {
+        return tracking instanceof PackedShipmentTable packed ? packed.timeline() : SkipListTimeline.build(tracking.values());
+    }
+
+    static Key keyOf(ShipmentInfo info) {
+        return new Key(info.getTimestampNanos(), info.getId());
+    }
+
+    void add(ShipmentInfo info);
+
+    /** Move a encomenda do indice do status antigo para o do status atual. */
+    void statusChanged(ShipmentInfo info, ShipmentStatus previousStatus);
+
+    /**
+     * Encomendas, da mais nova para a mais antiga, a partir do cursor, opcionalmente filtradas
+     * por status e limitadas as enviadas a partir de {@code since}.
+     *
+     * @param status filtro de status, ou null para todas
+     * @param after  cursor exclusivo (ultima chave da pagina anterior), ou null para comecar do topo
+     * @param since  instante minimo do envio, ou null para nao limitar
+     */
+    Iterable<Map.Entry<Key, ShipmentInfo>> page(ShipmentStatus status, Key after, LocalDateTime since);
+}
@@ -0,0 +1,52 @@
+package correio.server;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indice temporal sobre skip lists, usado com o mapa de rastreio padrao. Mantem uma lista
+ * geral e uma por status, para que uma pagina filtrada seja lida direto do indice sem ordenar
+ * nem percorrer o mapa de rastreio inteiro.
+ */
+public class SkipListTimeline implements ShipmentTimeline {
+    private final NavigableMap<Key, ShipmentInfo> all = new ConcurrentSkipListMap<>();
+    // Um indice por status, criados todos aqui: o mapa nunca muda depois do construtor
+    private final Map<ShipmentStatus, NavigableMap<Key, ShipmentInfo>> byStatus = new EnumMap<>(ShipmentStatus.class);
+
+    public SkipListTimeline() {
+        for (ShipmentStatus status : ShipmentStatus.values()) byStatus.put(status, new ConcurrentSkipListMap<>());
+    }
+
+    public static SkipListTimeline build(Collection<ShipmentInfo> shipments) {
+        SkipListTimeline timeline = new SkipListTimeline();
+        for (ShipmentInfo info : shipments) timeline.add(info);
+        return timeline;
+    }
+
+    @Override
+    public void add(ShipmentInfo info) {
+        Key key = ShipmentTimeline.keyOf(info);
+        all.put(key, info);
+        byStatus.get(info.getStatus()).put(key, info);
+    }
+
+    @Override
+    public void statusChanged(ShipmentInfo info, ShipmentStatus previousStatus) {
+        Key key = ShipmentTimeline.keyOf(info);
+        byStatus.get(previousStatus).remove(key);
+        byStatus.get(info.getStatus()).put(key, info);
+    }
+
+    /** Visao (sem copia) do intervalo pedido sobre a skip list geral ou a do status. */
+    @Override
+    public Iterable<Map.Entry<Key, ShipmentInfo>> page(ShipmentStatus status, Key after, LocalDateTime since) {
+        NavigableMap<Key, ShipmentInfo> view = status == null ? all : byStatus.get(status);
+        if (after != null) view = view.tailMap(after, false);
+        if (since != null) view = view.headMap(Key.atOrAfter(since), true);
+        return view.entrySet();
+    }
+}
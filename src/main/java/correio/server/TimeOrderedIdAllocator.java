@@ -0,0 +1,89 @@
+package correio.server;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IDs de 64 bits ordenados no tempo: 42 bits de milissegundos desde 2024-01-01,
+ * 10 bits de no (permite varios servidores sem coordenacao) e 12 bits de sequencia.
+ * Codificados em base32 Crockford com 13 caracteres (sem I, L, O, U), ex.: "0A8A3HPG40000".
+ *
+ * O relogio logico nunca anda para tras: se o relogio do sistema voltar, ou mais de 4096
+ * IDs forem pedidos no mesmo milissegundo, os IDs avancam sobre os milissegundos seguintes.
+ */
+public class TimeOrderedIdAllocator implements ShipmentIdAllocator {
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    static final int ENCODED_LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final long node;
+    // (milissegundos << SEQUENCE_BITS) | sequencia do ultimo ID emitido
+    private final AtomicLong last;
+
+    public TimeOrderedIdAllocator(int node, long lastState) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("No deve estar entre 0 e " + MAX_NODE);
+        this.node = node;
+        this.last = new AtomicLong(lastState);
+    }
+
+    public static TimeOrderedIdAllocator seededFrom(Collection<String> existingIds, int node) {
+        long lastState = 0;
+        for (String id : existingIds) {
+            long value = decode(id);
+            if (value >= 0) {
+                long state = ((value >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (value & SEQUENCE_MASK);
+                lastState = Math.max(lastState, state);
+            }
+        }
+        return new TimeOrderedIdAllocator(node, lastState);
+    }
+
+    @Override
+    public String nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        long current, next;
+        do {
+            current = last.get();
+            next = now > (current >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : current + 1;
+        } while (!last.compareAndSet(current, next));
+
+        long millis = next >>> SEQUENCE_BITS;
+        long value = (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+        return encode(value);
+    }
+
+    static String encode(long value) {
+        char[] out = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            out[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(out);
+    }
+
+    /** Decodifica um ID gerado por esta classe; retorna -1 para IDs em outro formato. */
+    static long decode(String id) {
+        if (id.length() != ENCODED_LENGTH) return -1;
+        // 13 caracteres somam 65 bits: o primeiro so pode usar 4, senao o bit extra se perderia
+        // e "G000000000000" viraria o mesmo valor de "0000000000000"
+        if (indexOf(id.charAt(0)) >= 16) return -1;
+        long value = 0;
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            int digit = indexOf(id.charAt(i));
+            if (digit < 0) return -1;
+            value = (value << 5) | digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) return i;
+        }
+        return -1;
+    }
+}
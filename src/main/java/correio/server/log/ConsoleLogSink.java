@@ -0,0 +1,18 @@
+package correio.server.log;
+
+import java.io.PrintStream;
+
+/** Escreve o lote no stdout com um unico flush. */
+public class ConsoleLogSink implements LogSink {
+    private final PrintStream out;
+
+    public ConsoleLogSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void publish(String[] lines, int count) {
+        for (int i = 0; i < count; i++) out.println(lines[i]);
+        out.flush();
+    }
+}
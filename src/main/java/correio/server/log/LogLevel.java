@@ -0,0 +1,20 @@
+package correio.server.log;
+
+import java.util.Locale;
+
+/** Niveis de log do servidor, do mais detalhado ao mais grave. */
+public enum LogLevel {
+    /** Rastreio por comando e por transferencia; desligado em producao. */
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR;
+
+    public static LogLevel parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Nivel de log desconhecido: " + value);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package correio.server.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encaminha o que for escrito em System.out/System.err (ex.: printStackTrace de bibliotecas)
+ * para o {@link ServerLog}, uma linha por evento.
+ */
+public class LogOutputStream extends OutputStream {
+    private final LogLevel level;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    public LogOutputStream(LogLevel level) {
+        this.level = level;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\r') return; // Ignora o caractere de retorno de carro
+        if (b == '\n') {
+            ServerLog.log(level, line.toString(StandardCharsets.UTF_8), null, null);
+            line.reset();
+            return;
+        }
+        line.write(b);
+    }
+}
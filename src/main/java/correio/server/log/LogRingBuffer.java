@@ -0,0 +1,81 @@
+package correio.server.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fila circular limitada, sem locks, com varios produtores e um unico consumidor.
+ * Os eventos sao pre-alocados e reutilizados; cada posicao tem um numero de sequencia que
+ * indica se ela esta livre para o produtor ou publicada para o consumidor.
+ * Quando cheia, {@link #offer} falha em vez de bloquear quem esta logando.
+ */
+final class LogRingBuffer {
+
+    /** Evento estruturado; a mensagem so e montada pelo consumidor. */
+    static final class Event {
+        long timeMillis;
+        LogLevel level;
+        String thread;
+        String message;
+        Object argument;
+        Throwable thrown;
+    }
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // so o consumidor le e escreve
+
+    LogRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacidade deve ser potencia de 2");
+        slots = new Event[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(LogLevel level, String message, Object argument, Throwable thrown) {
+        long pos;
+        while (true) {
+            pos = tail.get();
+            long diff = sequences.get((int) pos & mask) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (diff < 0) {
+                return false; // cheia
+            }
+            // outra thread ja pegou esta posicao; tenta a seguinte
+        }
+        int index = (int) pos & mask;
+        Event e = slots[index];
+        e.timeMillis = System.currentTimeMillis();
+        e.level = level;
+        e.thread = Thread.currentThread().getName();
+        e.message = message;
+        e.argument = argument;
+        e.thrown = thrown;
+        sequences.setRelease(index, pos + 1);
+        return true;
+    }
+
+    /** Entrega o proximo evento publicado ao consumidor; retorna null se nao houver. */
+    Event peek() {
+        int index = (int) head & mask;
+        return sequences.getAcquire(index) == head + 1 ? slots[index] : null;
+    }
+
+    /** Libera a posicao do evento obtido em {@link #peek} para novos produtores. */
+    void release() {
+        int index = (int) head & mask;
+        Event e = slots[index];
+        e.message = null;
+        e.argument = null;
+        e.thrown = null;
+        sequences.setRelease(index, head + slots.length);
+        head++;
+    }
+}
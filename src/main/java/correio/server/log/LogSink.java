@@ -0,0 +1,14 @@
+package correio.server.log;
+
+/**
+ * Destino das linhas de log. Chamado apenas pela thread consumidora do {@link ServerLog},
+ * uma vez por lote; as implementacoes nao precisam ser thread-safe.
+ */
+public interface LogSink {
+
+    /** Publica um lote de linhas ja formatadas (sem quebra de linha final). */
+    void publish(String[] lines, int count);
+
+    default void close() {
+    }
+}
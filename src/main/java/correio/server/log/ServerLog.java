@@ -0,0 +1,162 @@
+package correio.server.log;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log assincrono do servidor. Quem loga apenas grava um evento em um {@link LogRingBuffer}
+ * (sem locks e sem formatar nada); uma thread consumidora formata os eventos em lotes e os
+ * entrega aos {@link LogSink}s (console, arquivo rotativo, janela do servidor).
+ * Se o buffer encher, os eventos excedentes sao descartados e contabilizados, nunca bloqueando
+ * uma sessao por causa do log.
+ *
+ * Configuracao por propriedades de sistema: {@code correio.log.level} (padrao DEBUG, que inclui
+ * o rastreio por comando; use INFO em producao), {@code correio.log.console} (padrao true),
+ * {@code correio.log.file} (arquivo rotativo, desligado se vazio), {@code correio.log.file.maxBytes}
+ * e {@code correio.log.file.count}.
+ */
+public final class ServerLog {
+    private static final int BATCH = 256;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static final LogRingBuffer buffer = new LogRingBuffer(Integer.getInteger("correio.log.buffer", 8192));
+    private static final List<LogSink> sinks = new CopyOnWriteArrayList<>();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong published = new AtomicLong();
+    private static final AtomicLong consumed = new AtomicLong();
+    private static volatile LogLevel level = LogLevel.parse(System.getProperty("correio.log.level", "DEBUG"));
+
+    static {
+        if (Boolean.parseBoolean(System.getProperty("correio.log.console", "true"))) {
+            // Escreve no stdout real, mesmo que System.out seja redirecionado para o proprio log
+            sinks.add(new ConsoleLogSink(new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8)));
+        }
+        String file = System.getProperty("correio.log.file", "").trim();
+        if (!file.isEmpty()) {
+            try {
+                sinks.add(new RollingFileLogSink(Paths.get(file),
+                        Long.getLong("correio.log.file.maxBytes", 10L * 1024 * 1024),
+                        Integer.getInteger("correio.log.file.count", 5)));
+            } catch (IOException e) {
+                System.err.println("Nao foi possivel abrir o arquivo de log " + file + ": " + e.getMessage());
+            }
+        }
+        Thread consumer = new Thread(ServerLog::consume, "server-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    private ServerLog() {
+    }
+
+    public static boolean isEnabled(LogLevel candidate) {
+        return candidate.compareTo(level) >= 0;
+    }
+
+    public static void setLevel(LogLevel newLevel) {
+        level = newLevel;
+    }
+
+    public static void addSink(LogSink sink) {
+        sinks.add(sink);
+    }
+
+    public static void debug(String message) { log(LogLevel.DEBUG, message, null, null); }
+    /** A mensagem final ({@code message + argument}) so e montada pela thread do log. */
+    public static void debug(String message, Object argument) { log(LogLevel.DEBUG, message, argument, null); }
+    public static void info(String message) { log(LogLevel.INFO, message, null, null); }
+    public static void info(String message, Object argument) { log(LogLevel.INFO, message, argument, null); }
+    public static void warn(String message) { log(LogLevel.WARN, message, null, null); }
+    public static void warn(String message, Throwable thrown) { log(LogLevel.WARN, message, null, thrown); }
+    public static void error(String message) { log(LogLevel.ERROR, message, null, null); }
+    public static void error(String message, Throwable thrown) { log(LogLevel.ERROR, message, null, thrown); }
+
+    public static void log(LogLevel eventLevel, String message, Object argument, Throwable thrown) {
+        if (!isEnabled(eventLevel)) return;
+        if (buffer.offer(eventLevel, message, argument, thrown)) {
+            published.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** Aguarda (ate o tempo limite) que tudo o que ja foi logado chegue aos destinos. */
+    public static void flush(long timeout, TimeUnit unit) {
+        long target = published.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (consumed.get() < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /** Esvazia o buffer e fecha os destinos (arquivo). Usado no encerramento do servidor. */
+    public static void shutdown() {
+        flush(2, TimeUnit.SECONDS);
+        for (LogSink sink : sinks) sink.close();
+    }
+
+    private static void consume() {
+        String[] lines = new String[BATCH + 1];
+        StringBuilder sb = new StringBuilder(256);
+        long idleNanos = 0;
+        while (true) {
+            int count = 0;
+            LogRingBuffer.Event event;
+            while (count < BATCH && (event = buffer.peek()) != null) {
+                lines[count++] = format(event, sb);
+                buffer.release();
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                lines[count++] = "[log] " + lost + " evento(s) descartado(s): buffer de log cheio";
+            }
+
+            if (count == 0) {
+                // Sem eventos: espera crescente ate 10 ms, sem acordar a cada log dos produtores
+                idleNanos = Math.min(Math.max(idleNanos * 2, 50_000), 10_000_000);
+                LockSupport.parkNanos(idleNanos);
+                continue;
+            }
+            idleNanos = 0;
+            for (LogSink sink : sinks) {
+                try {
+                    sink.publish(lines, count);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+                }
+            }
+            consumed.addAndGet(lost > 0 ? count - 1 : count);
+        }
+    }
+
+    private static String format(LogRingBuffer.Event e, StringBuilder sb) {
+        sb.setLength(0);
+        TIME_FORMAT.formatTo(LocalTime.ofInstant(Instant.ofEpochMilli(e.timeMillis), ZONE), sb);
+        sb.append(' ').append(e.level.name());
+        for (int i = e.level.name().length(); i < 5; i++) sb.append(' ');
+        sb.append(" [").append(e.thread).append("] ").append(e.message);
+        if (e.argument != null) sb.append(e.argument);
+        if (e.thrown != null) {
+            StringWriter trace = new StringWriter();
+            e.thrown.printStackTrace(new PrintWriter(trace));
+            sb.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package correio.server.log;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Mostra o log na janela do servidor mantendo no maximo {@code maxLines} linhas.
+ * Os lotes se acumulam em um buffer pendente e a EDT recebe no maximo uma tarefa por vez:
+ * se ela estiver atrasada, os lotes seguintes sao anexados a mesma atualizacao.
+ */
+public class TextAreaLogSink implements LogSink {
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final int maxPendingChars;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean scheduled;
+
+    public TextAreaLogSink(JTextArea textArea, int maxLines) {
+        this.textArea = textArea;
+        this.maxLines = maxLines;
+        this.maxPendingChars = maxLines * 200;
+    }
+
+    @Override
+    public void publish(String[] lines, int count) {
+        synchronized (pending) {
+            for (int i = 0; i < count; i++) pending.append(lines[i]).append('\n');
+            if (pending.length() > maxPendingChars) {
+                // O que excede o limite sairia da tela de qualquer forma
+                int cut = pending.indexOf("\n", pending.length() - maxPendingChars);
+                pending.delete(0, cut < 0 ? pending.length() - maxPendingChars : cut + 1);
+            }
+            if (scheduled) return;
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(this::drainOnEdt);
+    }
+
+    private void drainOnEdt() {
+        String text;
+        synchronized (pending) {
+            text = pending.toString();
+            pending.setLength(0);
+            scheduled = false;
+        }
+        textArea.append(text);
+        int excess = textArea.getLineCount() - 1 - maxLines;
+        if (excess > 0) {
+            try {
+                textArea.getDocument().remove(0, textArea.getLineStartOffset(excess));
+            } catch (BadLocationException ignored) {
+            }
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength()); // Rola para o final
+    }
+}
@@ -0,0 +1,157 @@
+package correio.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metricas do servidor: contadores em {@link LongAdder} e histogramas de latencia, atualizados
+ * pelas sessoes sem locks, e gauges lidos sob demanda (pools, filas, tamanho do rastreio).
+ * Exportadas no formato texto do Prometheus pelo comando {@code SITE METRICS} e pelo
+ * {@link MetricsHttpServer}.
+ */
+public final class ServerMetrics {
+    /** Comandos com serie propria; os demais sao agrupados em OTHER para nao criar series sem limite. */
+    private static final List<String> VERBS = List.of(
+            "USER", "PASS", "TYPE", "ALLO", "MODE", "OPTS", "REST", "RANG", "SIZE",
+            "PASV", "LIST", "STOR", "RETR", "STAT", "SITE", "QUIT");
+    private static final List<String> TRANSFERS = List.of("STOR", "RETR", "LIST");
+    private static final int MIN_CODE = 100;
+    private static final int MAX_CODE = 599;
+
+    private final Map<String, LatencyHistogram> commands = new TreeMap<>();
+    private final Map<String, LatencyHistogram> transfers = new TreeMap<>();
+    private final LongAdder[] replies = new LongAdder[MAX_CODE - MIN_CODE + 1];
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder pasvFailures = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    // Nome da familia -> (rotulos -> valor); ordenado para uma saida estavel
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    private record Gauge(String help, Map<String, LongSupplier> series) {}
+
+    public ServerMetrics() {
+        for (String verb : VERBS) commands.put(verb, new LatencyHistogram());
+        commands.put("OTHER", new LatencyHistogram());
+        for (String verb : TRANSFERS) transfers.put(verb, new LatencyHistogram());
+        for (int i = 0; i < replies.length; i++) replies[i] = new LongAdder();
+        gauge("correio_jvm_threads", "", "Threads de plataforma vivas na JVM.",
+                () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    public void connectionAccepted() {
+        accepted.increment();
+    }
+
+    public void sessionOpened() {
+        opened.increment();
+    }
+
+    public void sessionClosed() {
+        closed.increment();
+    }
+
+    /** Comando processado no canal de controle, do recebimento ate a ultima resposta. */
+    public void command(String verb, long nanos) {
+        LatencyHistogram histogram = commands.get(verb);
+        (histogram != null ? histogram : commands.get("OTHER")).record(nanos);
+    }
+
+    /** Resposta final (linha {@code "NNN "}) enviada ao cliente. */
+    public void reply(int code) {
+        if (code >= MIN_CODE && code <= MAX_CODE) replies[code - MIN_CODE].increment();
+    }
+
+    /** PASV sem porta livre ou cliente que nao conectou no canal de dados anunciado. */
+    public void pasvFailure() {
+        pasvFailures.increment();
+    }
+
+    /** Bytes recebidos no canal de dados (como trafegaram, comprimidos ou nao) e duracao. */
+    public void transferIn(String verb, long bytes, long nanos) {
+        bytesIn.add(bytes);
+        transfers.get(verb).record(nanos);
+    }
+
+    public void transferOut(String verb, long bytes, long nanos) {
+        bytesOut.add(bytes);
+        transfers.get(verb).record(nanos);
+    }
+
+    /**
+     * Registra (ou substitui) uma serie lida a cada exportacao.
+     *
+     * @param labels rotulos sem chaves, ex.: {@code pool="ftp-session"}, ou vazio
+     */
+    public void gauge(String name, String labels, String help, LongSupplier value) {
+        gauges.computeIfAbsent(name, n -> new Gauge(help, new ConcurrentSkipListMap<>())).series().put(labels, value);
+    }
+
+    /** Gauges de threads e fila de um pool; executores de threads virtuais nao tem pool a medir. */
+    public void executor(String pool, ExecutorService executor) {
+        if (!(executor instanceof ThreadPoolExecutor tpe)) return;
+        String labels = "pool=\"" + pool + "\"";
+        gauge("correio_executor_threads", labels, "Threads no pool.", tpe::getPoolSize);
+        gauge("correio_executor_active_threads", labels, "Threads do pool executando tarefas.", tpe::getActiveCount);
+        gauge("correio_executor_queue_size", labels, "Tarefas aguardando uma thread do pool.", () -> tpe.getQueue().size());
+    }
+
+    public long acceptedConnections() { return accepted.sum(); }
+    public long activeSessions() { return opened.sum() - closed.sum(); }
+    public long replies(int code) { return code >= MIN_CODE && code <= MAX_CODE ? replies[code - MIN_CODE].sum() : 0; }
+
+    /** Todas as metricas no formato texto do Prometheus (versao 0.0.4). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        counter(out, "correio_connections_accepted_total", "Conexoes de controle aceitas.", accepted.sum());
+        header(out, "correio_sessions_active", "gauge", "Sessoes de controle abertas.");
+        out.append("correio_sessions_active ").append(activeSessions()).append('\n');
+
+        header(out, "correio_command_duration_seconds", "histogram", "Tempo de cada comando no canal de controle, por verbo.");
+        commands.forEach((verb, histogram) -> {
+            if (histogram.count() > 0) histogram.writeTo(out, "correio_command_duration_seconds", "command=\"" + verb + "\"");
+        });
+
+        header(out, "correio_replies_total", "counter", "Respostas finais enviadas, por codigo.");
+        for (int i = 0; i < replies.length; i++) {
+            long count = replies[i].sum();
+            if (count > 0) out.append("correio_replies_total{code=\"").append(MIN_CODE + i).append("\"} ").append(count).append('\n');
+        }
+        counter(out, "correio_pasv_failures_total", "Falhas do modo passivo (sem porta livre ou conexao de dados nao aberta).", pasvFailures.sum());
+
+        header(out, "correio_transfer_bytes_total", "counter", "Bytes no canal de dados, por sentido.");
+        out.append("correio_transfer_bytes_total{direction=\"in\"} ").append(bytesIn.sum()).append('\n');
+        out.append("correio_transfer_bytes_total{direction=\"out\"} ").append(bytesOut.sum()).append('\n');
+        header(out, "correio_transfer_duration_seconds", "histogram", "Duracao das transferencias no canal de dados.");
+        transfers.forEach((verb, histogram) -> histogram.writeTo(out, "correio_transfer_duration_seconds", "command=\"" + verb + "\""));
+
+        gauges.forEach((name, gauge) -> {
+            header(out, name, "gauge", gauge.help());
+            gauge.series().forEach((labels, value) -> {
+                out.append(name);
+                if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+                out.append(' ').append(value.getAsLong()).append('\n');
+            });
+        });
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
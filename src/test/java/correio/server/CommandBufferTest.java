@@ -0,0 +1,148 @@
+package correio.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandBufferTest {
+
+    @Test
+    void splitsPipelinedLinesAndStripsCarriageReturn() throws IOException {
+        CommandBuffer buffer = new CommandBuffer();
+        buffer.read(stream("USER anonymous\r\nRETR 0001\r\nPASV\nQUIT\r\n"));
+
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.USER, buffer.command());
+        assertEquals("USER anonymous", buffer.line());
+        assertTrue(buffer.hasCompleteLine()); // os proximos comandos ja chegaram
+
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.RETR, buffer.command());
+        assertEquals("0001", buffer.argument());
+
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.PASV, buffer.command());
+        assertNull(buffer.argument());
+
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.QUIT, buffer.command());
+        assertFalse(buffer.hasCompleteLine());
+        assertFalse(buffer.nextLine());
+    }
+
+    @Test
+    void keepsTextAfterFirstSpaceAsArgument() throws IOException {
+        CommandBuffer buffer = new CommandBuffer();
+        buffer.read(stream("STOR meu arquivo.txt\r\nSTAT 0001 0002\r\nFOO bar\r\n"));
+
+        assertTrue(buffer.nextLine());
+        assertEquals("meu arquivo.txt", buffer.argument());
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.STAT, buffer.command());
+        assertEquals("0001 0002", buffer.argument());
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.UNKNOWN, buffer.command());
+    }
+
+    @Test
+    void joinsLineSplitAcrossReads() throws IOException {
+        CommandBuffer buffer = new CommandBuffer();
+        InputStream in = new ChunkedStream("RETR 00|01\r|\nSIZE 0002\r\n".split("\\|"));
+
+        buffer.read(in);
+        assertFalse(buffer.nextLine());
+        buffer.read(in);
+        assertFalse(buffer.nextLine()); // so o \r chegou
+        buffer.read(in);
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.RETR, buffer.command());
+        assertEquals("0001", buffer.argument());
+        assertTrue(buffer.nextLine());
+        assertEquals("0002", buffer.argument());
+        assertFalse(buffer.nextLine());
+    }
+
+    @Test
+    void overLongLineIsReportedOnceAndFollowingCommandStillParses() throws IOException {
+        String longLine = "STOR " + "x".repeat(3 * CommandBuffer.MAX_LINE);
+        List<Command> commands = new ArrayList<>();
+        List<String> arguments = new ArrayList<>();
+        CommandBuffer buffer = new CommandBuffer();
+        InputStream in = new ChunkedStream(chunks(longLine + "\r\nRETR 0001\r\n", 1000));
+        while (buffer.read(in) >= 0) {
+            while (buffer.nextLine()) {
+                commands.add(buffer.command());
+                arguments.add(buffer.command() == null ? null : buffer.argument());
+            }
+        }
+
+        // Uma unica entrada null pela linha longa (o motor responde 500) e o RETR intacto
+        assertEquals(Arrays.asList(null, Command.RETR), commands);
+        assertEquals("0001", arguments.get(1));
+    }
+
+    @Test
+    void readsFromChannel() throws IOException {
+        CommandBuffer buffer = new CommandBuffer();
+        buffer.read(Channels.newChannel(stream("TYPE I\r\nLIST limit=10\r\n")));
+
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.TYPE, buffer.command());
+        assertTrue(buffer.nextLine());
+        assertEquals(Command.LIST, buffer.command());
+        assertEquals("limit=10", buffer.argument());
+        assertFalse(buffer.nextLine());
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] chunks(String text, int size) {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += size) parts.add(text.substring(i, Math.min(text.length(), i + size)));
+        return parts.toArray(new String[0]);
+    }
+
+    // Entrega no maximo um pedaco por read(), como um socket que recebe o comando em varios segmentos
+    private static final class ChunkedStream extends InputStream {
+        private final String[] parts;
+        private int next;
+        private int offset; // parte do pedaco atual ja entregue
+
+        ChunkedStream(String[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (next == parts.length) return -1;
+            byte[] part = parts[next].getBytes(StandardCharsets.US_ASCII);
+            int n = Math.min(len, part.length - offset);
+            System.arraycopy(part, offset, b, off, n);
+            offset += n;
+            if (offset == part.length) {
+                next++;
+                offset = 0;
+            }
+            return n;
+        }
+    }
+}
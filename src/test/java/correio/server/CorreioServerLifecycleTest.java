@@ -0,0 +1,84 @@
+package correio.server;
+
+import correio.client.CorreioClient;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CorreioServerLifecycleTest {
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void quietLog() {
+        ServerLog.setLevel(LogLevel.WARN);
+    }
+
+    @Test
+    void restartAfterStopReloadsStateAndKeepsSnapshotting() throws Exception {
+        CorreioServer server = new CorreioServer(config("0"));
+        server.start();
+        upload(server, 3);
+        server.stop();
+
+        // O diario do primeiro inicio foi fechado; o segundo precisa de um novo para os snapshots periodicos
+        server.start();
+        assertEquals(3, server.getContext().getTracking().size());
+        upload(server, 4);
+        server.stop();
+
+        server.start();
+        try {
+            assertEquals(7, server.getContext().getTracking().size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void startAfterFailedStartWorks() throws Exception {
+        int port;
+        CorreioServer server;
+        try (ServerSocket busy = new ServerSocket(0)) {
+            port = busy.getLocalPort();
+            server = new CorreioServer(config(String.valueOf(port)));
+            assertThrows(IOException.class, server::start);
+        }
+
+        server.start();
+        try {
+            upload(server, 3);
+            assertEquals(3, server.getContext().getTracking().size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private ServerConfig config(String port) {
+        return ServerConfig.defaults()
+                .with(ServerConfig.PORT, port)
+                .with(ServerConfig.DIR, dir.toString())
+                .with(ServerConfig.ENGINE, "blocking")
+                .with(ServerConfig.SNAPSHOT_EVERY, "2");
+    }
+
+    private static void upload(CorreioServer server, int count) {
+        try (CorreioClient client = new CorreioClient("localhost", server.port())) {
+            for (int i = 0; i < count; i++) {
+                byte[] content = ("conteudo " + i).getBytes(StandardCharsets.UTF_8);
+                client.upload("f" + i + ".txt", content.length, () -> new ByteArrayInputStream(content)).join();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package correio.server;
+
+import correio.client.CorreioClient;
+import correio.client.ListPage;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListPagingTest {
+    private static final Pattern PASV = Pattern.compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+    private static final Pattern BYTES_OUT = Pattern.compile("correio_transfer_bytes_total\\{direction=\"out\"} (\\d+)");
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "blocking", "nio" })
+    void cursorOnlyWhenMoreEntriesRemain(String engine) throws Exception {
+        CorreioServer server = start(engine);
+        try (CorreioClient client = new CorreioClient("localhost", server.port())) {
+            for (int i = 0; i < 4; i++) upload(client, "f" + i + ".txt");
+
+            ListPage first = client.list("limit=2").join();
+            assertEquals(2, first.rows().size());
+            assertNotNull(first.nextCursor());
+
+            // Sobram exatamente 2: a pagina e a ultima, sem cursor
+            ListPage last = client.list("limit=2 cursor=" + first.nextCursor()).join();
+            assertEquals(2, last.rows().size());
+            assertNull(last.nextCursor());
+
+            assertNull(client.list("limit=4").join().nextCursor());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "blocking", "nio" })
+    void listCountsEncodedBytes(String engine) throws Exception {
+        CorreioServer server = start(engine);
+        try {
+            // Registrada direto no contexto: o nome nao precisa existir no sistema de arquivos
+            ServerContext context = server.getContext();
+            ShipmentInfo info = new ShipmentInfo("0001", "relatório-ação-日本.txt", dir.resolve("0001"));
+            context.getTracking().put(info.getId(), info);
+            context.getTimeline().add(info);
+            long before = bytesOut(server);
+            byte[] listing = rawList(server.port());
+            assertTrue(new String(listing, StandardCharsets.UTF_8).contains("relatório-ação-日本.txt"));
+            assertEquals(listing.length, bytesOut(server) - before);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private CorreioServer start(String engine) throws Exception {
+        ServerLog.setLevel(LogLevel.WARN);
+        CorreioServer server = new CorreioServer(ServerConfig.defaults()
+                .with(ServerConfig.PORT, "0")
+                .with(ServerConfig.DIR, dir.toString())
+                .with(ServerConfig.ENGINE, engine));
+        server.start();
+        return server;
+    }
+
+    private static void upload(CorreioClient client, String name) {
+        byte[] content = name.getBytes(StandardCharsets.UTF_8);
+        client.upload(name, content.length, () -> new ByteArrayInputStream(content)).join();
+    }
+
+    private static long bytesOut(CorreioServer server) {
+        Matcher m = BYTES_OUT.matcher(server.getContext().getMetrics().toPrometheus());
+        assertTrue(m.find());
+        return Long.parseLong(m.group(1));
+    }
+
+    // LIST em MODE S pelo socket, devolvendo os bytes exatos do canal de dados
+    private static byte[] rawList(int port) throws Exception {
+        try (Socket control = new Socket("localhost", port)) {
+            control.setSoTimeout(5000);
+            OutputStream out = control.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            in.readLine(); // 220
+            out.write("PASV\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Matcher m = PASV.matcher(in.readLine());
+            assertTrue(m.find());
+            int dataPort = Integer.parseInt(m.group(5)) * 256 + Integer.parseInt(m.group(6));
+            try (Socket data = new Socket("localhost", dataPort)) {
+                out.write("LIST\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                assertTrue(in.readLine().startsWith("150"));
+                byte[] listing = data.getInputStream().readAllBytes();
+                assertTrue(in.readLine().startsWith("226"));
+                return listing;
+            }
+        }
+    }
+}
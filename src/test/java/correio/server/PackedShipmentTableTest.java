@@ -0,0 +1,150 @@
+package correio.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedShipmentTableTest {
+    private static final long BASE = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path uploadsDir;
+
+    @Test
+    void looksUpEveryIdFormat() {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        String timeId = new TimeOrderedIdAllocator(3, 0).nextId();
+        Path legacyFile = uploadsDir.resolve("0007_antigo_ENTREGUE.txt");
+        table.put("0001", info("0001", "a.txt", BASE + 1, ShipmentStatus.ENVIADA, uploadsDir.resolve("0001_a.txt")));
+        table.put("12345", info("12345", "b.txt", BASE + 2, ShipmentStatus.ENVIADA, null));
+        table.put("0007", info("0007", "antigo.txt", BASE + 3, ShipmentStatus.ENTREGUE, legacyFile));
+        table.put(timeId, info(timeId, "c.txt", BASE + 4, ShipmentStatus.ENVIADA, uploadsDir.resolve(timeId + "_c.txt")));
+        table.put("migrado-1", info("migrado-1", "d.txt", BASE + 5, ShipmentStatus.ENVIADA, null)); // fora dos formatos
+
+        assertEquals(5, table.size());
+        assertEquals("a.txt", table.get("0001").getFilename());
+        assertEquals(BASE + 2, table.get("12345").getTimestampNanos());
+        assertEquals(ShipmentStatus.ENTREGUE, table.get("0007").getStatus());
+        assertEquals("c.txt", table.get(timeId).getFilename());
+        assertEquals("d.txt", table.get("migrado-1").getFilename());
+
+        // O Path padrao e remontado, o antigo e guardado a parte e a ausencia continua ausente
+        assertEquals(uploadsDir.resolve("0001_a.txt"), table.get("0001").getFile());
+        assertEquals(legacyFile, table.get("0007").getFile());
+        assertNull(table.get("12345").getFile());
+
+        assertFalse(table.containsKey("0002"));
+        assertFalse(table.containsKey("001")); // "001" nao e o mesmo ID que "0001"
+        assertNull(table.get("0002"));
+        assertNull(table.get(42));
+    }
+
+    @Test
+    void findsAllEntriesAfterGrowing() {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        int count = 150_000; // mais de um bloco de registros e varios rehash do indice
+        for (int i = 1; i <= count; i++) {
+            String id = String.format("%04d", i);
+            table.put(id, info(id, "f" + (i % 100) + ".txt", BASE + i, ShipmentStatus.ENVIADA, null));
+        }
+        assertEquals(count, table.size());
+        for (int i = 1; i <= count; i += 997) {
+            assertEquals("f" + (i % 100) + ".txt", table.get(String.format("%04d", i)).getFilename());
+        }
+        assertTrue(table.containsKey(String.format("%04d", count)));
+        assertFalse(table.containsKey(String.format("%04d", count + 1)));
+    }
+
+    @Test
+    void statusCompareAndSetHasOneWinnerAcrossViews() throws Exception {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        table.put("0001", info("0001", "a.txt", BASE, ShipmentStatus.ENVIADA, null));
+
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+        List<Thread> racers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            ShipmentInfo view = table.get("0001"); // cada RETR tem a sua visao
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (view.compareAndSetStatus(ShipmentStatus.ENVIADA, ShipmentStatus.ENTREGUE)) winners.incrementAndGet();
+            });
+            t.start();
+            racers.add(t);
+        }
+        go.countDown();
+        for (Thread t : racers) t.join();
+
+        assertEquals(1, winners.get());
+        assertEquals(ShipmentStatus.ENTREGUE, table.get("0001").getStatus());
+    }
+
+    @Test
+    void putWithSameTimestampUpdatesInPlace() {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        table.put("0001", info("0001", "a.txt", BASE + 1, ShipmentStatus.ENVIADA, null));
+        table.put("0002", info("0002", "b.txt", BASE + 2, ShipmentStatus.ENVIADA, null));
+        ShipmentInfo before = table.get("0001");
+
+        // Registro do diario para a mesma encomenda: troca o status sem mudar a posicao
+        ShipmentInfo previous = table.put("0001", info("0001", "a.txt", BASE + 1, ShipmentStatus.ENTREGUE, null));
+        assertEquals(ShipmentStatus.ENVIADA, previous.getStatus());
+        assertEquals(ShipmentStatus.ENTREGUE, before.getStatus()); // visoes antigas leem o registro vivo
+        assertEquals(List.of("0002", "0001"), ids(table.timeline()));
+    }
+
+    @Test
+    void timelineOrdersNewestFirstAndFollowsChanges() {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        // Carga do diario fora de ordem
+        for (int i : new int[] { 3, 1, 4, 2 }) {
+            String id = String.format("%04d", i);
+            table.put(id, info(id, "f.txt", BASE + i, ShipmentStatus.ENVIADA, null));
+        }
+        ShipmentTimeline timeline = table.timeline();
+        assertEquals(List.of("0004", "0003", "0002", "0001"), ids(timeline));
+
+        table.put("0005", info("0005", "f.txt", BASE + 5, ShipmentStatus.ENVIADA, null));
+        table.remove("0003");
+        // Novo horario para um ID existente: sai da posicao antiga
+        table.put("0001", info("0001", "f.txt", BASE + 6, ShipmentStatus.ENVIADA, null));
+        assertEquals(List.of("0001", "0005", "0004", "0002"), ids(timeline));
+        assertFalse(table.containsKey("0003"));
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    void clearIsNotSupported() {
+        PackedShipmentTable table = new PackedShipmentTable(uploadsDir);
+        table.put("0001", info("0001", "a.txt", BASE, ShipmentStatus.ENVIADA, null));
+        assertThrows(UnsupportedOperationException.class, table::clear);
+        assertEquals(1, table.size());
+    }
+
+    private static ShipmentInfo info(String id, String name, long stamp, ShipmentStatus status, Path file) {
+        return new ShipmentInfo(id, name, stamp, status, file);
+    }
+
+    private static List<String> ids(ShipmentTimeline timeline) {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<ShipmentTimeline.Key, ShipmentInfo> entry : timeline.page(null, null, null)) ids.add(entry.getValue().getId());
+        return ids;
+    }
+}
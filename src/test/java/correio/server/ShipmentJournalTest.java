@@ -0,0 +1,154 @@
+package correio.server;
+
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShipmentJournalTest {
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void quietLog() {
+        ServerLog.setLevel(LogLevel.WARN);
+    }
+
+    @Test
+    void closeAndRecoverRestoresCreatedAndUpdatedShipments() throws Exception {
+        Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = open(dir, tracking, 10_000);
+        record(journal, tracking, 3);
+        ShipmentInfo delivered = tracking.get("0002").withStatus(ShipmentStatus.ENTREGUE, dir.resolve("0002_f2.txt"));
+        tracking.put("0002", delivered);
+        journal.recordUpdated(delivered);
+        journal.close();
+
+        Map<String, ShipmentInfo> recovered = new HashMap<>();
+        new ShipmentJournal(dir, 10_000, false).recover(recovered);
+        assertSame(tracking, recovered);
+        assertEquals(ShipmentStatus.ENTREGUE, recovered.get("0002").getStatus());
+    }
+
+    @Test
+    void tornTailIsDiscardedAndTruncated() throws Exception {
+        Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = open(dir, tracking, 10_000);
+        record(journal, tracking, 3);
+        // Queda no meio do terceiro registro: so os dois primeiros valem
+        Path log = logFile(dir);
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(bytes, bytes.length - 5));
+
+        Map<String, ShipmentInfo> recovered = new HashMap<>();
+        int replayed = new ShipmentJournal(dir, 10_000, false).recover(recovered);
+        assertEquals(2, replayed);
+        assertEquals(2, recovered.size());
+        assertFalse(recovered.containsKey("0003"));
+        assertTrue(Files.size(log) < bytes.length - 5); // o resto do registro incompleto saiu do log
+    }
+
+    @Test
+    void corruptedRecordStopsReplay() throws Exception {
+        Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = open(dir, tracking, 10_000);
+        record(journal, tracking, 3);
+        Path log = logFile(dir);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length / 2] ^= 0x55; // dentro do segundo registro: o CRC nao confere
+        Files.write(log, bytes);
+
+        Map<String, ShipmentInfo> recovered = new HashMap<>();
+        assertEquals(1, new ShipmentJournal(dir, 10_000, false).recover(recovered));
+        assertEquals(1, recovered.size());
+        assertTrue(recovered.containsKey("0001"));
+    }
+
+    @Test
+    void recoveryReadsRotatedLogLeftByInterruptedSnapshot() throws Exception {
+        Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = open(dir, tracking, 10_000);
+        record(journal, tracking, 2);
+        byte[] older = Files.readAllBytes(logFile(dir));
+        record(journal, tracking, 4);
+        byte[] all = Files.readAllBytes(logFile(dir));
+
+        // Estado de uma queda durante o snapshot em segundo plano: journal.old com os registros
+        // anteriores a troca de log, journal.log com os seguintes e nenhum snapshot
+        Path crashed = dir.resolve("crashed");
+        Files.createDirectories(crashed.resolve(ShipmentJournal.DIR));
+        Files.write(crashed.resolve(ShipmentJournal.DIR).resolve("journal.old"), older);
+        Files.write(logFile(crashed), Arrays.copyOfRange(all, older.length, all.length));
+
+        Map<String, ShipmentInfo> recovered = new ConcurrentHashMap<>();
+        ShipmentJournal reopened = new ShipmentJournal(crashed, 10_000, false);
+        assertEquals(4, reopened.recover(recovered));
+        assertSame(tracking, recovered);
+
+        // Ao abrir, o estado recuperado vira snapshot e o journal.old deixa de ser necessario
+        reopened.open(recovered);
+        assertFalse(Files.exists(crashed.resolve(ShipmentJournal.DIR).resolve("journal.old")));
+        reopened.close();
+        Map<String, ShipmentInfo> again = new HashMap<>();
+        new ShipmentJournal(crashed, 10_000, false).recover(again);
+        assertSame(tracking, again);
+    }
+
+    @Test
+    void periodicSnapshotsRotateWithoutLosingRecords() throws Exception {
+        Map<String, ShipmentInfo> tracking = new ConcurrentHashMap<>();
+        ShipmentJournal journal = open(dir, tracking, 2);
+        record(journal, tracking, 7);
+        // Espera o ultimo snapshot em segundo plano terminar antes de ler os arquivos
+        Path rotated = dir.resolve(ShipmentJournal.DIR).resolve("journal.old");
+        for (int i = 0; i < 500 && Files.exists(rotated); i++) Thread.sleep(10);
+        assertFalse(Files.exists(rotated));
+
+        Map<String, ShipmentInfo> recovered = new HashMap<>();
+        new ShipmentJournal(dir, 2, false).recover(recovered);
+        assertSame(tracking, recovered);
+        journal.close();
+    }
+
+    private static ShipmentJournal open(Path uploadsDir, Map<String, ShipmentInfo> tracking, int snapshotEvery) throws Exception {
+        ShipmentJournal journal = new ShipmentJournal(uploadsDir, snapshotEvery, false);
+        journal.open(tracking);
+        return journal;
+    }
+
+    // Como o STOR: primeiro o mapa, depois o diario
+    private static void record(ShipmentJournal journal, Map<String, ShipmentInfo> tracking, int upTo) throws Exception {
+        for (int i = tracking.size() + 1; i <= upTo; i++) {
+            String id = String.format("%04d", i);
+            ShipmentInfo info = new ShipmentInfo(id, "f" + i + ".txt", 1_700_000_000_000_000_000L + i, ShipmentStatus.ENVIADA, null);
+            tracking.put(id, info);
+            journal.recordCreated(info);
+        }
+    }
+
+    private static Path logFile(Path uploadsDir) {
+        return uploadsDir.resolve(ShipmentJournal.DIR).resolve("journal.log");
+    }
+
+    private static void assertSame(Map<String, ShipmentInfo> expected, Map<String, ShipmentInfo> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (ShipmentInfo info : expected.values()) {
+            ShipmentInfo other = actual.get(info.getId());
+            assertEquals(info.getFilename(), other.getFilename());
+            assertEquals(info.getTimestampNanos(), other.getTimestampNanos());
+            assertEquals(info.getStatus(), other.getStatus());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package correio.server;
+
+import correio.client.CorreioClient;
+import correio.server.log.LogLevel;
+import correio.server.log.ServerLog;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorValidationTest {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "blocking", "nio" })
+    void rejectsMissingOrUnsafeNamesBeforeReservingAnId(String engine) throws Exception {
+        ServerLog.setLevel(LogLevel.WARN);
+        CorreioServer server = new CorreioServer(ServerConfig.defaults()
+                .with(ServerConfig.PORT, "0")
+                .with(ServerConfig.DIR, dir.toString())
+                .with(ServerConfig.ENGINE, engine));
+        server.start();
+        try {
+            try (Socket control = new Socket("localhost", server.port())) {
+                control.setSoTimeout(5000);
+                OutputStream out = control.getOutputStream();
+                BufferedReader in = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+                in.readLine(); // 220
+
+                assertTrue(send(out, in, "STOR").startsWith("501"));
+                assertTrue(send(out, in, "STOR   ").startsWith("501"));
+                assertTrue(send(out, in, "STOR ../fora.txt").startsWith("553"));
+                assertTrue(send(out, in, "STOR sub/dentro.txt").startsWith("553"));
+                assertTrue(send(out, in, "STOR ..\\fora.txt").startsWith("553"));
+                assertTrue(send(out, in, "STOR ..").startsWith("553"));
+                // A sessao continua utilizavel depois das recusas
+                assertTrue(send(out, in, "TYPE I").startsWith("200"));
+            }
+
+            assertTrue(server.getContext().getTracking().isEmpty());
+            assertFalse(Files.exists(dir.resolve("fora.txt")));
+            try (Stream<Path> files = Files.walk(dir)) {
+                assertTrue(files.noneMatch(p -> p.getFileName().toString().contains("dentro")));
+            }
+
+            // Nenhum ID foi consumido pelas recusas
+            try (CorreioClient client = new CorreioClient("localhost", server.port())) {
+                byte[] content = "ok".getBytes(StandardCharsets.UTF_8);
+                String id = client.upload("ok.txt", content.length, () -> new ByteArrayInputStream(content)).join().trackingId();
+                assertEquals("0001", id);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    // PASV antes de cada STOR: a recusa tambem precisa liberar o canal de dados
+    private static String send(OutputStream out, BufferedReader in, String command) throws Exception {
+        if (command.startsWith("STOR")) {
+            out.write("PASV\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(in.readLine().startsWith("227"));
+        }
+        out.write((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return in.readLine();
+    }
+}
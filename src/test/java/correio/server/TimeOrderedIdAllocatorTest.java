@@ -0,0 +1,44 @@
+package correio.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TimeOrderedIdAllocatorTest {
+
+    @Test
+    void decodeRoundTripsGeneratedIds() {
+        TimeOrderedIdAllocator allocator = new TimeOrderedIdAllocator(7, 0);
+        for (int i = 0; i < 1000; i++) {
+            String id = allocator.nextId();
+            assertEquals(id, TimeOrderedIdAllocator.encode(TimeOrderedIdAllocator.decode(id)));
+        }
+    }
+
+    @Test
+    void decodeRejectsFirstCharacterBeyondFourBits() {
+        // 'G' vale 16: o bit extra nao cabe em 64 bits e o ID viraria um apelido de "0000000000000"
+        assertEquals(0, TimeOrderedIdAllocator.decode("0000000000000"));
+        assertEquals(-1, TimeOrderedIdAllocator.decode("G000000000000"));
+        assertEquals(-1, TimeOrderedIdAllocator.decode("Z000000000000"));
+    }
+
+    @Test
+    void aliasedIdDoesNotFindAnotherShipment() {
+        String id = new TimeOrderedIdAllocator(0, 0).nextId();
+        assertEquals('0', id.charAt(0));
+        String alias = "G" + id.substring(1);
+
+        PackedShipmentTable tracking = new PackedShipmentTable(Paths.get("uploads"));
+        tracking.put(id, new ShipmentInfo(id, "nota.pdf", Paths.get("uploads", id + "_nota.pdf")));
+
+        assertNotNull(tracking.get(id));
+        assertNull(tracking.get(alias));
+        assertFalse(tracking.containsKey(alias));
+    }
+}